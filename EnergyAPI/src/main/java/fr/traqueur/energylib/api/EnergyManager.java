@@ -5,16 +5,20 @@ import fr.traqueur.energylib.api.components.EnergyComponent;
 import fr.traqueur.energylib.api.components.EnergyNetwork;
 import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
 import fr.traqueur.energylib.api.mechanics.EnergyMechanic;
+import fr.traqueur.energylib.api.persistents.EnergyNetworkPersistentDataType;
 import fr.traqueur.energylib.api.types.EnergyType;
 import fr.traqueur.energylib.api.types.MechanicType;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.NamespacedKey;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
+import java.time.Duration;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * The EnergyManager is the principale class of the API, it is used to manage the energy components and networks.
@@ -110,8 +114,37 @@ public interface EnergyManager {
      */
     void stopNetworkUpdater();
 
+    /**
+     * Set the time the network updater may spend each tick.
+     * Each network started is charged with the cost of its last update, see {@link EnergyNetwork#getLastCost()},
+     * which is the time its mechanics kept the region threads busy, or the pool for the thread-safe networks,
+     * or with the time taken to start it if it is higher, so a network never updated is not free.
+     * Only the updates actually started are charged, a network whose previous update is still running is skipped.
+     * The networks are updated in turn, those left over when the budget is spent are updated first on the next tick.
+     * The budget is 10 milliseconds by default.
+     *
+     * @param budget The time budget per tick, zero for no limit.
+     */
+    void setUpdateBudget(Duration budget);
+
+    /**
+     * Get the time the network updater may spend each tick.
+     *
+     * @return The time budget per tick, zero if there is no limit.
+     */
+    Duration getUpdateBudget();
+
+    /**
+     * Get the number of networks the network updater could not update within its budget on its last tick.
+     *
+     * @return The number of deferred networks.
+     */
+    int getDeferredNetworks();
+
     /**
      * Delete a network.
+     * The network is removed from its chunk on the thread owning the chunk,
+     * or once the chunk is loaded again if it is not loaded.
      *
      * @param network The network to delete.
      */
@@ -145,25 +178,74 @@ public interface EnergyManager {
      */
     NamespacedKey getNetworkKey();
 
+    /**
+     * Get the key of a network saved in the binary format.
+     * Each network is saved under its own key in its chunk.
+     *
+     * @param id The network's unique identifier.
+     * @return The network data key.
+     */
+    NamespacedKey getNetworkDataKey(UUID id);
+
+    /**
+     * Get the persistent data type of the networks saved in the binary format.
+     *
+     * @return The network data type.
+     */
+    EnergyNetworkPersistentDataType getNetworkDataType();
+
     /**
      * Get all the networks.
+     * The returned set is a copy taken when this method is called: it does not follow the networks created or deleted later,
+     * and modifying it does not add nor remove networks from the manager.
      *
-     * @return The networks.
+     * @return A copy of the networks.
      */
     Set<EnergyNetwork> getNetworks();
 
     /**
-     * Save the networks.
+     * Save the networks that changed since they were last saved or loaded, see {@link EnergyNetwork#isDirty()}.
+     * The networks still being encoded are waited for, then the networks whose chunk is loaded are saved on the current thread.
+     * The networks encoded after their chunk unloaded are written in their chunk if it is owned by the current thread.
      */
     void saveNetworks();
 
+    /**
+     * Save the networks of a chunk that changed since they were last saved or loaded.
+     * This method must be called on the thread owning the chunk.
+     * A snapshot of each network is taken on the current thread and encoded off it, see {@link EnergyNetwork#saveAsync(java.util.concurrent.Executor)}.
+     *
+     * @param chunk The chunk to save the networks in.
+     */
+    void saveNetworks(Chunk chunk);
+
+    /**
+     * Save the networks of the loaded chunks of a world that changed since they were last saved or loaded.
+     * A snapshot of each network is taken on the thread owning its chunk and encoded off it,
+     * a network that did not change since it was last encoded is written right away.
+     *
+     * @param world The world to save the networks in.
+     */
+    void saveNetworks(World world);
+
     /**
      * Load the networks.
+     * The networks encoded after their chunk unloaded are written in the chunk.
      *
      * @param chunk The chunk to load the networks from.
      */
     void loadNetworks(Chunk chunk);
 
+    /**
+     * Unload the networks.
+     * The networks of an unloaded chunk are kept in memory but are no longer updated,
+     * their changes are encoded off the current thread and written in the chunk if it is still loaded,
+     * or once it is loaded again.
+     *
+     * @param chunk The chunk to unload the networks from.
+     */
+    void unloadNetworks(Chunk chunk);
+
     /**
      * Get the component from a block.
      *
@@ -172,6 +254,24 @@ public interface EnergyManager {
      */
     Optional<EnergyComponent<?>> getComponentFromBlock(Location location);
 
+    /**
+     * Signal that the mechanic of a component changed.
+     * The network of the component is updated again if it was dormant.
+     *
+     * @param location The location of the component.
+     */
+    void signalChange(Location location);
+
+    /**
+     * Write the energy held by the network of a storage back to its mechanic.
+     * The storages of a network are charged and discharged as a single battery,
+     * so a storage must be flushed before its mechanic is inspected.
+     * This method must be called on the thread owning the location.
+     *
+     * @param location The location of the storage.
+     */
+    void flushStorage(Location location);
+
     /**
      * Get the gson instance.
      *
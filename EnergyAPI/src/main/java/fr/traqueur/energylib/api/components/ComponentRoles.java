@@ -0,0 +1,158 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.types.MechanicType;
+
+import java.util.Arrays;
+
+/**
+ * The partition of the nodes of a network by mechanic type.
+ * The partitions are updated when a node is added or removed, so the tick iterates flat arrays.
+ * A node only keeps its slot in the partition of its first mechanic type, the rare components of several types
+ * are searched in their other partitions when they are removed.
+ * This class is not thread-safe, the network synchronizes the accesses.
+ */
+final class ComponentRoles {
+
+    /**
+     * The mechanic types.
+     */
+    private static final MechanicType[] TYPES = MechanicType.values();
+
+    /**
+     * The nodes of each mechanic type.
+     */
+    private final NetworkNode[][] nodes;
+
+    /**
+     * The number of nodes of each mechanic type.
+     */
+    private final int[] sizes;
+
+    /**
+     * The immutable copy of the nodes of each mechanic type, or null if it must be rebuilt.
+     */
+    private final NetworkNode[][] snapshots;
+
+    /**
+     * Creates empty partitions.
+     */
+    ComponentRoles() {
+        this.nodes = new NetworkNode[TYPES.length][];
+        this.sizes = new int[TYPES.length];
+        this.snapshots = new NetworkNode[TYPES.length][];
+        for (int i = 0; i < TYPES.length; i++) {
+            this.nodes[i] = new NetworkNode[4];
+        }
+    }
+
+    /**
+     * Add a node to the partitions of its mechanic types.
+     *
+     * @param node The node to add.
+     */
+    void add(NetworkNode node) {
+        int primary = primary(node);
+        for (int role = primary; role >= 0 && role < TYPES.length; role++) {
+            if (!TYPES[role].isInstance(node.component)) {
+                continue;
+            }
+            if (this.sizes[role] == this.nodes[role].length) {
+                this.nodes[role] = Arrays.copyOf(this.nodes[role], this.sizes[role] << 1);
+            }
+            if (role == primary) {
+                node.slot = this.sizes[role];
+            }
+            this.nodes[role][this.sizes[role]++] = node;
+            this.snapshots[role] = null;
+        }
+    }
+
+    /**
+     * Remove a node from the partitions it belongs to.
+     *
+     * @param node The node to remove.
+     */
+    void remove(NetworkNode node) {
+        if (node.slot < 0) {
+            return;
+        }
+        int primary = primary(node);
+        for (int role = primary; role < TYPES.length; role++) {
+            if (!TYPES[role].isInstance(node.component)) {
+                continue;
+            }
+            int slot = role == primary ? node.slot : this.indexOf(role, node);
+            if (slot < 0) {
+                continue;
+            }
+            int last = --this.sizes[role];
+            NetworkNode moved = this.nodes[role][last];
+            this.nodes[role][slot] = moved;
+            if (primary(moved) == role) {
+                moved.slot = slot;
+            }
+            this.nodes[role][last] = null;
+            this.snapshots[role] = null;
+        }
+        node.slot = -1;
+    }
+
+    /**
+     * Search a node in the partition of a mechanic type.
+     *
+     * @param role The ordinal of the mechanic type.
+     * @param node The node.
+     * @return The slot of the node, or -1 if it is not in the partition.
+     */
+    private int indexOf(int role, NetworkNode node) {
+        NetworkNode[] partition = this.nodes[role];
+        for (int i = this.sizes[role] - 1; i >= 0; i--) {
+            if (partition[i] == node) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the first mechanic type of a node, the one whose slot is kept by the node.
+     *
+     * @param node The node.
+     * @return The ordinal of the mechanic type, or -1 if the component has none.
+     */
+    private static int primary(NetworkNode node) {
+        for (int role = 0; role < TYPES.length; role++) {
+            if (TYPES[role].isInstance(node.component)) {
+                return role;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the nodes of a mechanic type.
+     * The returned array must not be modified, it is shared until the partition changes.
+     *
+     * @param type The mechanic type.
+     * @return The nodes of the mechanic type.
+     */
+    NetworkNode[] get(MechanicType type) {
+        int role = type.ordinal();
+        NetworkNode[] snapshot = this.snapshots[role];
+        if (snapshot == null) {
+            snapshot = Arrays.copyOf(this.nodes[role], this.sizes[role]);
+            this.snapshots[role] = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the number of nodes of a mechanic type.
+     *
+     * @param type The mechanic type.
+     * @return The number of nodes of the mechanic type.
+     */
+    int count(MechanicType type) {
+        return this.sizes[type.ordinal()];
+    }
+}
@@ -0,0 +1,147 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.utils.LongHashMap;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.block.BlockFace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The connectivity checks run when a block is removed from a set of connected nodes.
+ * A search starts from each neighbor of the removed block and the searches expand one node each in turns,
+ * two searches meeting are merged, so the nodes are known to be still connected as soon as all the searches met.
+ * Otherwise the searches running out of nodes have visited a whole detached part, and the cost of the check
+ * stays bounded by the size of the smaller parts instead of the size of all the nodes.
+ */
+final class Connectivity {
+
+    /**
+     * This class only holds static methods.
+     */
+    private Connectivity() {
+    }
+
+    /**
+     * Find the parts no longer connected to the rest after a block has been removed.
+     *
+     * @param nodes  The remaining nodes, by packed block position.
+     * @param starts The remaining nodes next to the removed block.
+     * @return The detached parts, empty if the nodes are still connected.
+     *         The part still being searched, or the largest one, is not returned and keeps its place.
+     */
+    static List<List<NetworkNode>> detachedParts(LongHashMap<NetworkNode> nodes, List<NetworkNode> starts) {
+        if (starts.size() < 2) {
+            return List.of();
+        }
+        List<ArrayDeque<NetworkNode>> queues = new ArrayList<>(starts.size());
+        LongHashMap<Integer> owners = new LongHashMap<>();
+        for (NetworkNode start : starts) {
+            if (!owners.containsKey(start.position)) {
+                owners.put(start.position, queues.size());
+                queues.add(new ArrayDeque<>(List.of(start)));
+            }
+        }
+        int searches = queues.size();
+        int[] parents = new int[searches];
+        for (int i = 0; i < searches; i++) {
+            parents[i] = i;
+        }
+
+        int sets = searches;
+        boolean[] open = new boolean[searches];
+        while (sets > 1) {
+            for (int i = 0; i < searches; i++) {
+                ArrayDeque<NetworkNode> queue = queues.get(i);
+                NetworkNode current = queue.poll();
+                if (current == null) {
+                    continue;
+                }
+                for (BlockFace face : EnergyNetwork.FACES) {
+                    NetworkNode neighbor = nodes.get(Positions.offset(current.position, face.getModX(), face.getModY(), face.getModZ()));
+                    if (neighbor == null) {
+                        continue;
+                    }
+                    Integer owner = owners.get(neighbor.position);
+                    if (owner == null) {
+                        owners.put(neighbor.position, i);
+                        queue.add(neighbor);
+                    } else if (find(parents, owner) != find(parents, i)) {
+                        parents[find(parents, owner)] = find(parents, i);
+                        sets--;
+                    }
+                }
+            }
+            Arrays.fill(open, false);
+            int running = 0;
+            for (int i = 0; i < searches; i++) {
+                int root = find(parents, i);
+                if (!queues.get(i).isEmpty() && !open[root]) {
+                    open[root] = true;
+                    running++;
+                }
+            }
+            if (running <= 1) {
+                break;
+            }
+        }
+        if (sets <= 1) {
+            return List.of();
+        }
+
+        int[] sizes = new int[searches];
+        for (Object owner : owners.values()) {
+            sizes[find(parents, (Integer) owner)]++;
+        }
+        int kept = -1;
+        for (int i = 0; i < searches; i++) {
+            if (open[i]) {
+                kept = i;
+            }
+        }
+        if (kept < 0) {
+            for (int i = 0; i < searches; i++) {
+                if (find(parents, i) == i && (kept < 0 || sizes[i] > sizes[kept])) {
+                    kept = i;
+                }
+            }
+        }
+
+        List<List<NetworkNode>> parts = new ArrayList<>();
+        int[] partOf = new int[searches];
+        Arrays.fill(partOf, -1);
+        for (int i = 0; i < searches; i++) {
+            int root = find(parents, i);
+            if (root != kept && partOf[root] < 0) {
+                partOf[root] = parts.size();
+                parts.add(new ArrayList<>());
+            }
+        }
+        long[] positions = owners.keys();
+        Object[] values = owners.values();
+        for (int i = 0; i < positions.length; i++) {
+            int part = partOf[find(parents, (Integer) values[i])];
+            if (part >= 0) {
+                parts.get(part).add(nodes.get(positions[i]));
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Find the search a search has been merged into.
+     *
+     * @param parents The search each search has been merged into, or itself.
+     * @param search  The search.
+     * @return The search representing all the searches merged with it.
+     */
+    private static int find(int[] parents, int search) {
+        while (parents[search] != search) {
+            parents[search] = parents[parents[search]];
+            search = parents[search];
+        }
+        return search;
+    }
+}
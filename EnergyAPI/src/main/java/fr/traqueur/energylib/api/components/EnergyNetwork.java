@@ -3,26 +3,46 @@ package fr.traqueur.energylib.api.components;
 import fr.traqueur.energylib.api.EnergyAPI;
 import fr.traqueur.energylib.api.EnergyManager;
 import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
-import fr.traqueur.energylib.api.mechanics.EnergyConsumer;
-import fr.traqueur.energylib.api.mechanics.EnergyProducer;
-import fr.traqueur.energylib.api.mechanics.EnergyStorage;
+import fr.traqueur.energylib.api.mechanics.ThreadSafeMechanic;
+import fr.traqueur.energylib.api.persistents.EnergyNetworkPersistentDataType;
+import fr.traqueur.energylib.api.types.DistributionMode;
 import fr.traqueur.energylib.api.types.EnergyType;
 import fr.traqueur.energylib.api.types.MechanicType;
+import fr.traqueur.energylib.api.utils.LongHashMap;
+import fr.traqueur.energylib.api.utils.Positions;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.persistence.PersistentDataType;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Represents an energy network.
  */
 public class EnergyNetwork {
 
+    /**
+     * The 6 faces of a block, a component is connected to the components placed on them.
+     */
+    static final BlockFace[] FACES = {BlockFace.UP, BlockFace.DOWN, BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST};
+
+    /**
+     * The number of ticks between two updates of a dormant network.
+     */
+    public static final int DORMANT_PROBE_INTERVAL = 200;
+
     /**
      * The API instance.
      */
@@ -34,14 +54,116 @@ public class EnergyNetwork {
     private final UUID id;
 
     /**
-     * The network's chunk.
+     * The packed key of the network's chunk, the network is saved under its own key in this chunk.
+     * The chunk is set when the network is created and never changes, so the network is never saved in two chunks.
+     */
+    private long chunkKey;
+
+    /**
+     * The network's world, shared by all its components.
+     */
+    private World world;
+
+    /**
+     * The network's components, by packed block position.
+     * All the accesses are synchronized on the network.
+     */
+    private final LongHashMap<NetworkNode> components;
+
+    /**
+     * The network's components, partitioned by mechanic type.
+     */
+    private final ComponentRoles roles;
+
+    /**
+     * The network's transporters, contracted into connected clusters.
+     */
+    private final TransporterClusters clusters;
+
+    /**
+     * The components reachable by the consumers and the producers, or null if they must be computed.
+     */
+    private NetworkRoutes routes;
+
+    /**
+     * The batteries retired since the routes were last computed, their storages are carried over to the next battery.
+     */
+    private final List<VirtualBattery> retired = new ArrayList<>(1);
+
+    /**
+     * The distribution mode of the network, or null to use the one of its energy type.
+     */
+    private volatile DistributionMode distributionMode;
+
+    /**
+     * The number of ticks between two updates of the network, or 0 to use the one of its energy type.
+     */
+    private volatile int updateInterval;
+
+    /**
+     * The tick of the network updater at which the network was last updated, or -1 if it has never been updated.
+     */
+    private volatile long lastUpdateTick = -1;
+
+    /**
+     * If the network moved no energy on its last update and nothing changed since.
+     */
+    private volatile boolean dormant;
+
+    /**
+     * The number of changes signaled to the network, a network changed during an update is not made dormant.
+     */
+    private final AtomicLong changes;
+
+    /**
+     * The version of the state of the network, increased by every change that must be saved.
+     */
+    private final AtomicLong version;
+
+    /**
+     * The version of the state of the network last saved in its chunk, or -1 if it has never been saved.
+     */
+    private volatile long savedVersion = -1;
+
+    /**
+     * The network last encoded off the thread owning its chunk and not written in the chunk yet, or null.
+     */
+    private volatile Encoded encoded;
+
+    /**
+     * If the network has been deleted from its chunk, it is then never written in it again.
+     */
+    private volatile boolean deleted;
+
+    /**
+     * If an update of the network is still running.
      */
-    private Chunk chunk;
+    private final AtomicBoolean inFlight;
 
     /**
-     * The network's components.
+     * The number of updates skipped because the previous one was still running.
      */
-    private final Map<Location, EnergyComponent<?>> components;
+    private final AtomicLong overruns;
+
+    /**
+     * The time taken by the last update of the network, in nanoseconds.
+     */
+    private volatile long lastLatency;
+
+    /**
+     * The longest time taken by an update of the network, in nanoseconds.
+     */
+    private volatile long maxLatency;
+
+    /**
+     * The time the last update of the network kept the threads running it busy, in nanoseconds.
+     */
+    private volatile long lastCost;
+
+    /**
+     * The view of the components by location.
+     */
+    private final Map<Location, EnergyComponent<?>> componentsView;
 
     /**
      * Creates a new energy network.
@@ -52,8 +174,9 @@ public class EnergyNetwork {
      */
     public EnergyNetwork(EnergyAPI api, EnergyComponent<?> component, Location location) {
         this(api, UUID.randomUUID());
-        this.components.put(location, component);
-        this.chunk = location.getChunk();
+        this.world = location.getWorld();
+        this.putNode(new NetworkNode(this.world, Positions.pack(location), component));
+        this.chunkKey = Positions.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
     }
 
     /**
@@ -65,7 +188,29 @@ public class EnergyNetwork {
     public EnergyNetwork(EnergyAPI api, UUID id) {
         this.api = api;
         this.id = id;
-        this.components = new ConcurrentHashMap<>();
+        this.components = new LongHashMap<>();
+        this.roles = new ComponentRoles();
+        this.clusters = new TransporterClusters();
+        this.changes = new AtomicLong();
+        this.version = new AtomicLong();
+        this.inFlight = new AtomicBoolean();
+        this.overruns = new AtomicLong();
+        this.componentsView = new ComponentsView();
+    }
+
+    /**
+     * Creates a new empty energy network anchored in a chunk, to load a saved network.
+     * The network keeps this chunk whatever components are added to it.
+     *
+     * @param api      The API instance.
+     * @param id       The network's unique identifier.
+     * @param world    The network's world.
+     * @param chunkKey The packed key of the network's chunk.
+     */
+    public EnergyNetwork(EnergyAPI api, UUID id, World world, long chunkKey) {
+        this(api, id);
+        this.world = world;
+        this.chunkKey = chunkKey;
     }
 
     /**
@@ -75,15 +220,16 @@ public class EnergyNetwork {
      * @param location  The location of the component.
      * @throws SameEnergyTypeException If the component is not the same type.
      */
-    public void addComponent(EnergyComponent<?> component, Location location) throws SameEnergyTypeException {
-        for (Map.Entry<Location, EnergyComponent<?>> entry : this.components.entrySet().stream()
-                .filter(entry -> entry.getKey().distance(location) == 1).toList()) {
-            entry.getValue().connect(component);
+    public synchronized void addComponent(EnergyComponent<?> component, Location location) throws SameEnergyTypeException {
+        long position = Positions.pack(location);
+        for (EnergyComponent<?> neighbor : this.getNeighbors(position)) {
+            neighbor.connect(component);
         }
-        if (chunk == null) {
-            this.chunk = location.getChunk();
+        if (this.world == null) {
+            this.world = location.getWorld();
+            this.chunkKey = Positions.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
         }
-        this.components.put(location, component);
+        this.putNode(new NetworkNode(this.world, position, component));
     }
 
     /**
@@ -91,11 +237,19 @@ public class EnergyNetwork {
      *
      * @param location The location of the component.
      */
-    public void removeComponent(Location location) {
-        this.components.entrySet().stream().filter(entry -> entry.getKey().distance(location) == 1).forEach(entry -> {
-            entry.getValue().disconnect(this.components.get(location));
-        });
-        this.components.remove(location);
+    public synchronized void removeComponent(Location location) {
+        long position = Positions.pack(location);
+        NetworkNode node = this.components.remove(position);
+        if (node == null) {
+            return;
+        }
+        this.roles.remove(node);
+        this.clusters.remove(this.components, node);
+        this.invalidateRoutes();
+        this.wake();
+        for (EnergyComponent<?> neighbor : this.getNeighbors(position)) {
+            neighbor.disconnect(node.component);
+        }
     }
 
     /**
@@ -105,132 +259,320 @@ public class EnergyNetwork {
      * @return If the network contains the location.
      */
     public boolean contains(Location location) {
-        return this.components.containsKey(location);
+        return this.componentsView.containsKey(location);
     }
 
     /**
      * Merge the network with another network.
+     * Only the components of the other network are moved, so it should be the smaller one.
+     * The network keeps its chunk, and adds the update statistics of the other network to its own.
      *
      * @param network The network to merge with.
      */
     public void mergeWith(EnergyNetwork network) {
-        this.components.putAll(network.components);
+        long[] positions;
+        Object[] values;
+        List<VirtualBattery> batteries;
+        synchronized (network) {
+            network.invalidateRoutes();
+            positions = network.components.keys();
+            values = network.components.values();
+            batteries = new ArrayList<>(network.retired);
+        }
+        synchronized (this) {
+            this.retired.addAll(batteries);
+            this.components.ensureCapacity(this.components.size() + positions.length);
+            for (int i = 0; i < positions.length; i++) {
+                this.putNode(((NetworkNode) values[i]).copy(this.world));
+            }
+        }
+        this.overruns.addAndGet(network.overruns.get());
+        this.maxLatency = Math.max(this.maxLatency, network.maxLatency);
     }
 
     /**
-     * Update the network.
+     * Split off the parts of the network no longer connected to the rest after a component has been removed.
+     * Only the detached parts are visited in full and moved to new networks, see {@link Connectivity}.
+     *
+     * @param location The location of the removed component.
+     * @return The new networks holding the detached parts, empty if the network is still connected.
      */
-    public void update() {
-        this.handleProduction().thenAccept((t) -> {
-            this.handleConsumers().thenAccept((t1) -> {
-                this.handleExcess();
-            });
-        });
+    public synchronized List<EnergyNetwork> splitAround(Location location) {
+        long removed = Positions.pack(location);
+        List<NetworkNode> starts = new ArrayList<>(FACES.length);
+        for (BlockFace face : FACES) {
+            NetworkNode start = this.components.get(Positions.offset(removed, face.getModX(), face.getModY(), face.getModZ()));
+            if (start != null) {
+                starts.add(start);
+            }
+        }
+        List<List<NetworkNode>> parts = Connectivity.detachedParts(this.components, starts);
+        if (parts.isEmpty()) {
+            return List.of();
+        }
+
+        this.invalidateRoutes();
+        List<EnergyNetwork> networks = new ArrayList<>(parts.size());
+        for (List<NetworkNode> part : parts) {
+            for (NetworkNode node : part) {
+                this.components.remove(node.position);
+                this.roles.remove(node);
+            }
+            this.clusters.removePart(part);
+            EnergyNetwork network = new EnergyNetwork(this.api, UUID.randomUUID());
+            network.world = this.world;
+            network.distributionMode = this.distributionMode;
+            network.updateInterval = this.updateInterval;
+            network.retired.addAll(this.retired);
+            network.chunkKey = anchor(part, removed);
+            network.components.ensureCapacity(part.size());
+            for (NetworkNode node : part) {
+                network.putNode(node.copy(network.world));
+            }
+            networks.add(network);
+        }
+        this.wake();
+        return networks;
     }
 
     /**
-     * Update the network production asynchronously.
+     * Call an action for each component of the network, with its packed block position.
+     * The action is called on a copy of the components, so the network can be modified meanwhile.
+     *
+     * @param action The action to call.
      */
-    private CompletableFuture<Void> handleProduction() {
-        Map<Location, EnergyComponent<?>> producers = this.getComponentByType(MechanicType.PRODUCER);
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        producers.forEach((location, producer) -> {
-            var future = this.api.getScheduler().runAtLocation(location, (t) -> {
-                ((EnergyProducer) producer.getMechanic()).produce(location);
-            });
-            futures.add(future);
-        });
-        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    public void forEachComponent(LongHashMap.EntryConsumer<EnergyComponent<?>> action) {
+        long[] positions;
+        Object[] values;
+        synchronized (this) {
+            positions = this.components.keys();
+            values = this.components.values();
+        }
+        for (int i = 0; i < positions.length; i++) {
+            action.accept(positions[i], ((NetworkNode) values[i]).component);
+        }
     }
 
     /**
-     * Update the network excess asynchronously.
+     * Update the network for a single tick.
+     * The update is skipped if the previous one is still running.
      */
-    private void handleExcess() {
-        Map<Location, EnergyComponent<?>> producers = getComponentByType(MechanicType.PRODUCER);
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        producers.forEach((location, producerComponent) -> {
-            var future = this.api.getScheduler().runAtLocation(location, (t) -> {
-                EnergyProducer producer = (EnergyProducer) producerComponent.getMechanic();
-                double excessEnergy = producer.getExcessEnergy();
+    public void update() {
+        if (this.begin()) {
+            this.update(1);
+        }
+    }
 
-                if (excessEnergy > 0) {
-                    List<EnergyComponent<?>> connectedStorages =
-                            getConnectedComponents(producerComponent, MechanicType.STORAGE);
+    /**
+     * Get if the update interval of the network has elapsed.
+     *
+     * @param tick The current tick of the network updater.
+     * @return If the network must be updated.
+     */
+    public boolean isDue(long tick) {
+        long last = this.lastUpdateTick;
+        if (last < 0) {
+            return true;
+        }
+        int interval = this.getUpdateInterval();
+        return tick - last >= (this.dormant ? Math.max(interval, DORMANT_PROBE_INTERVAL) : interval);
+    }
 
-                    for (EnergyComponent<?> storageComponent : connectedStorages) {
-                        EnergyStorage storage = (EnergyStorage) storageComponent.getMechanic();
-                        double energyStored = storage.storeEnergy(excessEnergy);
-                        excessEnergy -= energyStored;
+    /**
+     * Update the network with the energy of all the ticks elapsed since its last update.
+     * The update is skipped if the previous one is still running, its ticks are then moved by the next update.
+     * A dormant network moved no energy since its last update, so its probe only moves the energy of one interval,
+     * the producers are not paid for the ticks the network slept.
+     *
+     * @param tick The current tick of the network updater.
+     * @return If the update has been started.
+     */
+    public boolean update(long tick) {
+        return this.update(tick, Runnable::run);
+    }
 
-                        if (excessEnergy <= 0) {
-                            break;
-                        }
-                    }
-                }
+    /**
+     * Update the network like {@link #update(long)}, the update being run by an executor.
+     * Whether the update is started is decided on the calling thread, so the caller knows it without waiting for the executor.
+     *
+     * @param tick     The current tick of the network updater.
+     * @param executor The executor running the update, the thread-safe networks can be updated off the updater thread.
+     * @return If the update has been started.
+     * @throws RejectedExecutionException If the executor rejected the update, the network is then not updating.
+     */
+    public boolean update(long tick, Executor executor) {
+        if (!this.begin()) {
+            return false;
+        }
+        long last = this.lastUpdateTick;
+        this.lastUpdateTick = tick;
+        int interval = this.getUpdateInterval();
+        int elapsedTicks = last < 0 || this.dormant ? interval : (int) Math.min(Integer.MAX_VALUE, tick - last);
+        try {
+            executor.execute(() -> this.update(elapsedTicks));
+        } catch (RejectedExecutionException e) {
+            this.lastUpdateTick = last;
+            this.inFlight.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Mark an update of the network as running.
+     *
+     * @return If no update was running, otherwise the update is counted as an overrun.
+     */
+    private boolean begin() {
+        if (this.inFlight.compareAndSet(false, true)) {
+            return true;
+        }
+        this.overruns.incrementAndGet();
+        return false;
+    }
 
-                if (excessEnergy > 0 && api.isDebug()) {
-                    System.out.println("L'énergie excédentaire du producteur " + producerComponent + " est perdue.");
+    /**
+     * Update the network, moving the energy of several ticks.
+     * The state of the mechanics is read on the region threads, the transfers are computed off these threads,
+     * then the results are written back on the region threads, with one scheduled task per chunk for each step.
+     *
+     * @param elapsedTicks The number of ticks since the last update of the network.
+     */
+    private void update(int elapsedTicks) {
+        long start = System.nanoTime();
+        long changes = this.changes.get();
+        NetworkTick tick;
+        CompletableFuture<Void> run;
+        try {
+            tick = new NetworkTick(this.api, this.getRoutes(), this.getDistributionMode(), elapsedTicks);
+            run = tick.run();
+        } catch (RuntimeException e) {
+            this.inFlight.set(false);
+            throw e;
+        }
+        run.whenComplete((t, error) -> {
+            long latency = System.nanoTime() - start;
+            this.lastLatency = latency;
+            if (latency > this.maxLatency) {
+                this.maxLatency = latency;
+            }
+            this.lastCost = tick.getCost();
+            if (error == null) {
+                if (tick.getMovedEnergy() > 0) {
+                    this.version.incrementAndGet();
                 }
-            });
-            futures.add(future);
+                this.settleDormancy(changes, tick.getMovedEnergy());
+            } else if (this.api.isDebug()) {
+                System.out.println("La mise à jour du réseau " + this.id + " a échoué : " + error.getMessage());
+            }
+            this.inFlight.set(false);
         });
     }
 
     /**
-     * Update the network consumers asynchronously.
+     * Get if an update of the network is still running.
+     *
+     * @return If an update is running.
      */
-    private CompletableFuture<Void> handleConsumers() {
-        Map<Location, EnergyComponent<?>> consumers = this.getComponentByType(MechanicType.CONSUMER);
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        consumers.forEach((location, consumerComponent) -> {
-            var future = this.api.getScheduler().runAtLocation(location, (t) -> {
-                EnergyConsumer consumer = (EnergyConsumer) consumerComponent.getMechanic();
-                double requiredEnergy = consumer.getEnergyDemand();
-                double providedEnergy = 0;
+    public boolean isUpdating() {
+        return this.inFlight.get();
+    }
 
-                List<EnergyComponent<?>> connectedProducers =
-                        getConnectedComponents(consumerComponent, MechanicType.PRODUCER);
+    /**
+     * Get the number of updates skipped because the previous one was still running.
+     *
+     * @return The number of overruns.
+     */
+    public long getOverruns() {
+        return this.overruns.get();
+    }
 
-                for (EnergyComponent<?> producerComponent : connectedProducers) {
-                    EnergyProducer producer = (EnergyProducer) producerComponent.getMechanic();
-                    double energyAvailable = producer.extractEnergy(requiredEnergy);
-                    requiredEnergy -= energyAvailable;
-                    providedEnergy += energyAvailable;
-                    if (requiredEnergy <= 0) {
-                        break;
-                    }
-                }
+    /**
+     * Get the time taken by the last update of the network, from its start to the last mechanic written back.
+     *
+     * @return The latency of the last update.
+     */
+    public Duration getLastLatency() {
+        return Duration.ofNanos(this.lastLatency);
+    }
 
-                if (requiredEnergy > 0) {
-                    List<EnergyComponent<?>> connectedStorages =
-                            getConnectedComponents(consumerComponent, MechanicType.STORAGE);
+    /**
+     * Get the time the last update of the network kept the threads running it busy.
+     * Unlike the latency, the time spent waiting for the region threads is not counted,
+     * so this is what an update of the network adds to the ticks of the regions.
+     *
+     * @return The cost of the last update.
+     */
+    public Duration getLastCost() {
+        return Duration.ofNanos(this.lastCost);
+    }
 
-                    for (EnergyComponent<?> storageComponent : connectedStorages) {
-                        EnergyStorage storage = (EnergyStorage) storageComponent.getMechanic();
-                        double energyFromStorage = storage.consumeEnergy(requiredEnergy);
-                        requiredEnergy -= energyFromStorage;
-                        providedEnergy += energyFromStorage;
+    /**
+     * Get the longest time taken by an update of the network.
+     *
+     * @return The highest latency of an update.
+     */
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(this.maxLatency);
+    }
 
-                        if (requiredEnergy <= 0) {
-                            break;
-                        }
-                    }
-                }
+    /**
+     * Make the network dormant if its update moved no energy and nothing changed meanwhile.
+     *
+     * @param changes The number of changes signaled when the update started.
+     * @param moved   The energy moved by the update.
+     */
+    private void settleDormancy(long changes, double moved) {
+        if (moved <= 0 && this.changes.get() == changes) {
+            this.dormant = true;
+        } else if (moved > 0) {
+            this.dormant = false;
+        }
+    }
 
-                consumer.receiveEnergy(providedEnergy);
-                if (requiredEnergy > 0) {
-                    if (api.isDebug()) {
-                        System.out.println("Le consommateur " + consumerComponent + " n'a pas reçu assez d'énergie.");
-                    }
-                    consumer.setEnable(false);
-                } else {
-                    consumer.setEnable(true);
-                }
-            });
-            futures.add(future);
-        });
-        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    /**
+     * Signal a change to the network, so a dormant network is updated again on the next tick and saved again.
+     * The storages are read again from their mechanics by the next update, so the changes made to them
+     * by something else than the network are not overwritten.
+     * The network is woken when a component is added or removed, mechanics can wake it through
+     * {@link EnergyManager#signalChange(Location)} when their state changes.
+     */
+    public void wake() {
+        this.changes.incrementAndGet();
+        this.version.incrementAndGet();
+        NetworkRoutes routes;
+        synchronized (this) {
+            routes = this.routes;
+        }
+        if (routes != null) {
+            routes.battery.markStale();
+        }
+        if (this.dormant) {
+            this.dormant = false;
+            this.lastUpdateTick = -1;
+        }
+    }
+
+    /**
+     * Get if all the mechanics of the network are {@link ThreadSafeMechanic}s.
+     * Such a network is updated without scheduling its mechanics on the region threads,
+     * so it can be updated in parallel with the other thread-safe networks.
+     *
+     * @return If the network is thread-safe.
+     */
+    public boolean isThreadSafe() {
+        return this.getRoutes().threadSafe;
+    }
+
+    /**
+     * Get if the network is dormant.
+     * A dormant network moved no energy on its last update, it is only updated again when it is woken
+     * or every {@value #DORMANT_PROBE_INTERVAL} ticks to notice changes nobody signaled.
+     *
+     * @return If the network is dormant.
+     */
+    public boolean isDormant() {
+        return this.dormant;
     }
 
     /**
@@ -238,7 +580,7 @@ public class EnergyNetwork {
      *
      * @return If the network is empty.
      */
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return this.components.isEmpty();
     }
 
@@ -249,56 +591,247 @@ public class EnergyNetwork {
      * @return If the network is in the chunk.
      */
     public boolean isInChunk(Chunk chunk) {
-        return this.components.keySet()
-                .stream()
-                .anyMatch(location -> this.isSameChunk(chunk, location.getChunk()));
+        if (!chunk.getWorld().equals(this.world)) {
+            return false;
+        }
+        long chunkKey = Positions.chunkKey(chunk);
+        long[] positions;
+        synchronized (this) {
+            positions = this.components.keys();
+        }
+        for (long position : positions) {
+            if (Positions.chunkKey(position) == chunkKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Get the energy stored in the storages of the network, as seen by the network.
+     *
+     * @return The stored energy.
+     */
+    public double getStoredEnergy() {
+        return this.getRoutes().battery.getTotalStored();
+    }
+
+    /**
+     * Get the maximum capacity of the storages of the network read so far.
+     *
+     * @return The storage capacity.
+     */
+    public double getStorageCapacity() {
+        return this.getRoutes().battery.getTotalCapacity();
     }
 
+    /**
+     * Write the energy held by the network back to all its storages.
+     * The storages are charged and discharged as a single battery by the updates,
+     * so their mechanics are only up to date once they are flushed.
+     * The storages are flushed chunk by chunk on the threads owning them, the chunks owned by the current thread
+     * are flushed directly on it.
+     *
+     * @return A future completed when every storage has been flushed.
+     */
+    public CompletableFuture<Void> flushStorages() {
+        NetworkRoutes routes = this.getRoutes();
+        routes.battery.spread();
+        return routes.runBatches(this.api, routes.storages, routes.storageBatches, routes.battery::flush, new LongAdder(), true);
+    }
 
     /**
-     * Save the network in the chunk.
+     * Write the energy held by the network back to a storage.
+     * This method must be called on the thread owning the storage.
+     *
+     * @param location The location of the storage.
+     */
+    public void flushStorage(Location location) {
+        Long position = this.toPosition(location);
+        if (position == null) {
+            return;
+        }
+        NetworkRoutes routes = this.getRoutes();
+        NetworkNode node;
+        synchronized (this) {
+            node = this.components.get(position);
+        }
+        if (node == null || !MechanicType.STORAGE.isInstance(node.component)) {
+            return;
+        }
+        routes.battery.spread();
+        routes.battery.flush(routes.battery.indexOf(node));
+    }
+
+    /**
+     * Get if the network changed since it was last saved or loaded.
+     * The network changes when a component is added or removed, when its settings are modified,
+     * when an update moves energy, and when a mechanic signals a change through {@link #wake()}.
+     *
+     * @return If the network must be saved.
+     */
+    public boolean isDirty() {
+        return this.version.get() != this.savedVersion;
+    }
+
+    /**
+     * Mark the current state of the network as saved, the network is then no longer dirty until it changes.
+     * This is called once the network is saved, or loaded from its chunk.
+     */
+    public void markSaved() {
+        this.savedVersion = this.version.get();
+    }
+
+    /**
+     * Save the network in the chunk, even if it is not dirty.
+     * The network is encoded on the current thread, which must own the chunk.
      */
     public void save() {
-        EnergyManager manager = this.api.getManager();
-        Chunk chunk = this.getChunk();
-        PersistentDataContainer container = chunk.getPersistentDataContainer();
-        var gson = manager.getGson();
-        String json = gson.toJson(this, EnergyNetwork.class);
-
-        List<String> networks =
-                container.getOrDefault(manager.getNetworkKey(), PersistentDataType.LIST.listTypeFrom(PersistentDataType.STRING), new ArrayList<>());
-        networks = new ArrayList<>(networks);
-        networks.removeIf(network -> {
-            EnergyNetwork energyNetwork = gson.fromJson(network, EnergyNetwork.class);
-            return energyNetwork.getId().equals(this.id);
+        long version = this.version.get();
+        this.flushBeforeSave();
+        byte[] data = this.api.getManager().getNetworkDataType().encode(this);
+        this.runInChunk((chunk) -> this.write(chunk, data, version));
+    }
+
+    /**
+     * Save the network in the chunk, even if it is not dirty, without encoding it on the current thread.
+     * The current thread must own the chunk and the mechanics of the network.
+     * If the network did not change since it was last encoded, the encoded network is written right away.
+     * Otherwise a snapshot of the network is taken on the current thread, then it is encoded and compressed by the executor,
+     * and the encoded network is written on the thread owning the chunk.
+     * If the chunk is unloaded meanwhile, the encoded network is kept and the network stays dirty,
+     * it must be written once the chunk is loaded again, see {@link #writeEncoded()}.
+     *
+     * @param executor The executor encoding the network.
+     * @return A future completed when the network is encoded, its write in the chunk is then scheduled.
+     */
+    public CompletableFuture<Void> saveAsync(Executor executor) {
+        long version = this.version.get();
+        Encoded last = this.encoded;
+        if (last != null && last.version() == version) {
+            this.write(this.getChunk(), last.data(), version);
+            return CompletableFuture.completedFuture(null);
+        }
+        this.flushBeforeSave();
+        EnergyNetworkPersistentDataType dataType = this.api.getManager().getNetworkDataType();
+        EnergyNetworkPersistentDataType.Snapshot snapshot = dataType.snapshot(this);
+        CompletableFuture<byte[]> encoding;
+        try {
+            encoding = CompletableFuture.supplyAsync(() -> dataType.encode(snapshot), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return encoding.thenAccept((data) -> {
+            Encoded current = this.encoded;
+            if (current == null || current.version() < version) {
+                this.encoded = new Encoded(data, version);
+            }
+            this.runInChunk((chunk) -> this.write(chunk, data, version));
         });
-        networks.add(json);
+    }
 
-        container.set(manager.getNetworkKey(), PersistentDataType.LIST.listTypeFrom(PersistentDataType.STRING), networks);
+    /**
+     * Flush the storages before the network is encoded.
+     * The storages owned by other threads are flushed later on their threads,
+     * the network is then dirty again so these storages are saved by its next save.
+     */
+    private void flushBeforeSave() {
+        CompletableFuture<Void> flushed = this.flushStorages();
+        if (!flushed.isDone()) {
+            flushed.thenRun(this.version::incrementAndGet);
+        }
+    }
+
+    /**
+     * Write in the chunk the network last encoded by {@link #saveAsync(Executor)}, if it has not been written yet.
+     * This method must be called on the thread owning the chunk, while the chunk is loaded.
+     *
+     * @return If the network is no longer dirty.
+     */
+    public boolean writeEncoded() {
+        Encoded last = this.encoded;
+        if (last != null) {
+            this.write(this.getChunk(), last.data(), last.version());
+        }
+        return !this.isDirty();
     }
 
     /**
-     * Delete the network from the chunk.
+     * Write the encoded network in the chunk, unless a more recent state of the network has already been written
+     * or the network has been deleted.
+     * This method must be called on the thread owning the chunk.
+     *
+     * @param chunk   The chunk of the network.
+     * @param data    The encoded network.
+     * @param version The version of the state of the network that was encoded.
      */
-    public void delete() {
+    private void write(Chunk chunk, byte[] data, long version) {
+        if (this.deleted || version < this.savedVersion) {
+            return;
+        }
         PersistentDataContainer container = chunk.getPersistentDataContainer();
-        List<String> networks =
-                container.getOrDefault(this.api.getManager().getNetworkKey(), PersistentDataType.LIST.listTypeFrom(PersistentDataType.STRING), new ArrayList<>());
-        networks = new ArrayList<>(networks);
-        networks.removeIf(json -> {
-            EnergyNetwork network = this.api.getManager().getGson().fromJson(json, EnergyNetwork.class);
-            return network.getId().equals(this.id);
-        });
-        container.set(this.api.getManager().getNetworkKey(), PersistentDataType.LIST.listTypeFrom(PersistentDataType.STRING), networks);
+        container.set(this.api.getManager().getNetworkDataKey(this.id), PersistentDataType.BYTE_ARRAY, data);
+        this.savedVersion = version;
+        Encoded last = this.encoded;
+        if (last != null && last.version() <= version) {
+            this.encoded = null;
+        }
+    }
+
+    /**
+     * Delete the network from the chunk, on the thread owning the chunk.
+     * The chunk is never loaded to delete the network: if it is not loaded, the network must be deleted from it
+     * once it is loaded again.
+     *
+     * @return If the chunk is loaded and the network is deleted from it, false if the chunk is not loaded.
+     */
+    public boolean delete() {
+        this.deleted = true;
+        if (this.world == null) {
+            return true;
+        }
+        if (!this.isChunkLoaded()) {
+            return false;
+        }
+        NamespacedKey key = this.api.getManager().getNetworkDataKey(this.id);
+        this.runInChunk((chunk) -> chunk.getPersistentDataContainer().remove(key));
+        return true;
+    }
+
+    /**
+     * Run an action on the chunk of the network, on the thread owning the chunk, directly if it is the current thread.
+     * The action is skipped if the chunk is not loaded when it runs, the chunk is never loaded.
+     *
+     * @param action The action.
+     * @return A future completed when the action has run or has been skipped.
+     */
+    private CompletableFuture<Void> runInChunk(Consumer<Chunk> action) {
+        int chunkX = Positions.chunkX(this.chunkKey);
+        int chunkZ = Positions.chunkZ(this.chunkKey);
+        Runnable task = () -> {
+            if (this.world.isChunkLoaded(chunkX, chunkZ)) {
+                action.accept(this.world.getChunkAt(chunkX, chunkZ));
+            }
+        };
+        if (this.api.getScheduler().isOwnedByCurrentRegion(this.world, chunkX, chunkZ)) {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        return this.api.getScheduler().runAtLocation(new Location(this.world, chunkX << 4, 0, chunkZ << 4), (t) -> task.run());
     }
 
     /**
      * Get the network's components.
+     * The returned map is a read-only view: it follows the components added and removed through the network,
+     * but its modifying methods throw an {@link UnsupportedOperationException},
+     * use {@link #addComponent(EnergyComponent, Location)} and {@link #removeComponent(Location)} instead.
+     * Iterating the view works on a copy of the components taken when the iterator is created.
      *
-     * @return The network's components.
+     * @return A read-only view of the network's components.
      */
     public Map<Location, EnergyComponent<?>> getComponents() {
-        return this.components;
+        return this.componentsView;
     }
 
     /**
@@ -310,6 +843,72 @@ public class EnergyNetwork {
         return this.getRoot().getEnergyType();
     }
 
+    /**
+     * Get the way the network hands out energy.
+     * The whole network is a single pool in the {@link DistributionMode#POOLED} mode.
+     *
+     * @return The distribution mode of the network, or the one of its energy type if it is not overridden.
+     */
+    public DistributionMode getDistributionMode() {
+        DistributionMode mode = this.distributionMode;
+        if (mode != null) {
+            return mode;
+        }
+        return this.isEmpty() ? DistributionMode.GREEDY : this.getEnergyType().getDistributionMode();
+    }
+
+    /**
+     * Get the distribution mode set on the network.
+     *
+     * @return The distribution mode of the network, empty if the one of its energy type is used.
+     */
+    public Optional<DistributionMode> getDistributionModeOverride() {
+        return Optional.ofNullable(this.distributionMode);
+    }
+
+    /**
+     * Set the way the network hands out energy.
+     *
+     * @param distributionMode The distribution mode, or null to use the one of the energy type.
+     */
+    public void setDistributionMode(DistributionMode distributionMode) {
+        this.distributionMode = distributionMode;
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * Get the number of ticks between two updates of the network.
+     *
+     * @return The update interval of the network, or the one of its energy type if it is not overridden.
+     */
+    public int getUpdateInterval() {
+        int interval = this.updateInterval;
+        if (interval > 0) {
+            return interval;
+        }
+        return this.isEmpty() ? 1 : Math.max(1, this.getEnergyType().getUpdateInterval());
+    }
+
+    /**
+     * Get the update interval set on the network.
+     *
+     * @return The update interval of the network, empty if the one of its energy type is used.
+     */
+    public OptionalInt getUpdateIntervalOverride() {
+        int interval = this.updateInterval;
+        return interval > 0 ? OptionalInt.of(interval) : OptionalInt.empty();
+    }
+
+    /**
+     * Set the number of ticks between two updates of the network.
+     *
+     * @param updateInterval The update interval, in ticks, or 0 to use the one of the energy type.
+     */
+    public void setUpdateInterval(int updateInterval) {
+        this.updateInterval = Math.max(0, updateInterval);
+        this.version.incrementAndGet();
+    }
+
     /**
      * Get the network's unique identifier.
      *
@@ -319,88 +918,243 @@ public class EnergyNetwork {
         return id;
     }
 
+    /**
+     * Get the network's world.
+     *
+     * @return The network's world.
+     */
+    public World getWorld() {
+        return this.world;
+    }
+
     /**
      * Get the chunk.
+     * The chunk is loaded if it is not, so this method must be called on the thread owning the chunk,
+     * see {@link #isChunkLoaded()}.
      *
      * @return The chunk.
      */
     public Chunk getChunk() {
-        return this.chunk;
+        return this.world.getChunkAt(Positions.chunkX(this.chunkKey), Positions.chunkZ(this.chunkKey));
     }
 
     /**
-     * Check if two chunks are the same.
+     * Get if the chunk of the network is loaded, without loading it.
      *
-     * @param chunk  The first chunk.
-     * @param chunk1 The second chunk.
-     * @return If the chunks are the same.
+     * @return If the chunk is loaded.
      */
-    private boolean isSameChunk(Chunk chunk, Chunk chunk1) {
-        return chunk.getX() == chunk1.getX() && chunk.getZ() == chunk1.getZ()
-                && chunk.getWorld().getName().equals(chunk1.getWorld().getName());
+    public boolean isChunkLoaded() {
+        return this.world != null && this.world.isChunkLoaded(Positions.chunkX(this.chunkKey), Positions.chunkZ(this.chunkKey));
     }
 
     /**
-     * Get the root component.
+     * Get the packed key of the chunk.
      *
-     * @return The root component.
+     * @return The packed key of the chunk.
      */
-    private EnergyComponent<?> getRoot() {
-        return this.components.values().iterator().next();
+    public long getChunkKey() {
+        return this.chunkKey;
     }
 
     /**
-     * Get the connected components.
+     * Get the chunk of a part split off the network, preferably the chunk of the removed component
+     * so the chunk is loaded and owned by the current thread.
      *
-     * @param component The component to check.
-     * @param type      The type of the component.
-     * @return The connected components.
+     * @param part    The nodes of the part.
+     * @param removed The packed position of the removed component.
+     * @return The packed key of the chunk of the part.
      */
-    private List<EnergyComponent<?>> getConnectedComponents(EnergyComponent<?> component, MechanicType type) {
-        Set<EnergyComponent<?>> visited = new HashSet<>();
-        List<EnergyComponent<?>> connectedComponents = new ArrayList<>();
-        this.dfsConnectedComponents(component, visited, connectedComponents, type);
-        return connectedComponents;
+    private static long anchor(List<NetworkNode> part, long removed) {
+        long chunkKey = Positions.chunkKey(removed);
+        for (NetworkNode node : part) {
+            if (Positions.chunkKey(node.position) == chunkKey) {
+                return chunkKey;
+            }
+        }
+        return Positions.chunkKey(part.get(0).position);
     }
 
     /**
-     * Depth-first search to get the connected components.
+     * Get the root component.
      *
-     * @param component           The component to check.
-     * @param visited             The visited components.
-     * @param connectedComponents The connected components.
-     * @param type                The type of the component.
+     * @return The root component.
      */
-    private void dfsConnectedComponents(EnergyComponent<?> component, Set<EnergyComponent<?>> visited,
-                                        List<EnergyComponent<?>> connectedComponents, MechanicType type) {
-        if (visited.contains(component)) {
-            return;
+    private synchronized EnergyComponent<?> getRoot() {
+        return this.components.firstValue().component;
+    }
+
+    /**
+     * Add a node to the components and to the partitions of its mechanic types.
+     *
+     * @param node The node to add.
+     */
+    private void putNode(NetworkNode node) {
+        NetworkNode previous = this.components.put(node.position, node);
+        if (previous != null) {
+            this.roles.remove(previous);
+            this.clusters.remove(this.components, previous);
         }
+        this.roles.add(node);
+        this.clusters.add(this.components, node);
+        this.invalidateRoutes();
+        this.wake();
+    }
 
-        visited.add(component);
+    /**
+     * Drop the routes after a topology change, the energy of their battery is spread back to the storages first.
+     */
+    private void invalidateRoutes() {
+        if (this.routes != null) {
+            this.routes.battery.retire();
+            this.retired.add(this.routes.battery);
+            this.routes = null;
+        }
+    }
 
-        if (type.isInstance(component)) {
-            connectedComponents.add(component);
+    /**
+     * Get the components reachable by the consumers and the producers, computed again after a topology change.
+     *
+     * @return The routes of the network.
+     */
+    private synchronized NetworkRoutes getRoutes() {
+        if (this.routes == null) {
+            this.routes = new NetworkRoutes(this.components, this.roles, this.clusters, this.retired);
+            this.retired.clear();
         }
+        return this.routes;
+    }
 
-        for (EnergyComponent<?> neighbor : component.getConnectedComponents()) {
-            if (!visited.contains(neighbor) && (MechanicType.TRANSPORTER.isInstance(neighbor) || type.isInstance(neighbor))) {
-                this.dfsConnectedComponents(neighbor, visited, connectedComponents, type);
+    /**
+     * Get the components next to a block.
+     *
+     * @param position The packed position of the block.
+     * @return The components next to the block.
+     */
+    private List<EnergyComponent<?>> getNeighbors(long position) {
+        List<EnergyComponent<?>> neighbors = new ArrayList<>(FACES.length);
+        for (BlockFace face : FACES) {
+            NetworkNode neighbor = this.components.get(Positions.offset(position, face.getModX(), face.getModY(), face.getModZ()));
+            if (neighbor != null) {
+                neighbors.add(neighbor.component);
             }
         }
+        return neighbors;
     }
 
     /**
-     * Get the components by type.
+     * Convert a packed block position of the network to a location.
      *
-     * @param type The type of the component.
-     * @return The components by type.
+     * @param position The packed position.
+     * @return The location.
      */
-    private Map<Location, EnergyComponent<?>> getComponentByType(MechanicType type) {
-        return this.components.entrySet()
-                .stream()
-                .filter(entry -> type.getClazz().isAssignableFrom(entry.getValue().getMechanic().getClass()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    private Location toLocation(long position) {
+        return new Location(this.world, Positions.x(position), Positions.y(position), Positions.z(position));
+    }
+
+    /**
+     * Get the packed position of a location, if it is in the network's world.
+     *
+     * @param key The location.
+     * @return The packed position, or null if the key is not a location of the network's world.
+     */
+    private Long toPosition(Object key) {
+        if (!(key instanceof Location location) || !Objects.equals(location.getWorld(), this.world)) {
+            return null;
+        }
+        return Positions.pack(location);
+    }
+
+    /**
+     * A read-only view of the components by location.
+     * The locations are created when the view is iterated, the network only stores packed positions.
+     */
+    private class ComponentsView extends AbstractMap<Location, EnergyComponent<?>> {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            synchronized (EnergyNetwork.this) {
+                return components.size();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(Object key) {
+            Long position = toPosition(key);
+            if (position == null) {
+                return false;
+            }
+            synchronized (EnergyNetwork.this) {
+                return components.containsKey(position);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public EnergyComponent<?> get(Object key) {
+            Long position = toPosition(key);
+            if (position == null) {
+                return null;
+            }
+            synchronized (EnergyNetwork.this) {
+                NetworkNode node = components.get(position);
+                return node == null ? null : node.component;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Entry<Location, EnergyComponent<?>>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Location, EnergyComponent<?>>> iterator() {
+                    long[] positions;
+                    Object[] values;
+                    synchronized (EnergyNetwork.this) {
+                        positions = components.keys();
+                        values = components.values();
+                    }
+                    return new Iterator<>() {
+                        private int index = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.index < positions.length;
+                        }
+
+                        @Override
+                        public Entry<Location, EnergyComponent<?>> next() {
+                            if (!this.hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = this.index++;
+                            return new SimpleImmutableEntry<>(toLocation(positions[current]), ((NetworkNode) values[current]).component);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ComponentsView.this.size();
+                }
+            };
+        }
     }
 
+    /**
+     * A network encoded off the thread owning its chunk.
+     *
+     * @param data    The encoded network.
+     * @param version The version of the state of the network that was encoded.
+     */
+    private record Encoded(byte[] data, long version) {}
 }
@@ -0,0 +1,701 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.types.MechanicType;
+import fr.traqueur.energylib.api.utils.LongHashMap;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.block.BlockFace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The flow network of an energy network whose transporters have a limited throughput.
+ * The energy flows from a source to the producers and to the groups of the battery,
+ * through the components, then to a sink from the consumers and the groups of the battery.
+ * Each group must hold a single storage, see {@link NetworkRoutes}: a group joined to several storages
+ * would move energy between them without going through the transporters between them.
+ * The components that are neither producers, consumers, storages nor transporters have no vertex, no energy flows through them.
+ * A limited transporter is split in two vertices joined by an edge holding its throughput,
+ * the energy flows through every component but the consumers.
+ * The transporters are contracted, the graph holds one vertex per hub or chain of transporters instead of one per block.
+ * The maximum flow is computed with Dinic's algorithm, starting from the flow of the previous update,
+ * so an update only pushes the difference when the supplies and the demands barely changed.
+ * This class is not thread-safe, a network runs a single update at a time.
+ */
+final class FlowGraph {
+
+    /**
+     * The amount of energy under which a residual capacity is considered empty.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * The vertex the energy flows from.
+     */
+    private static final int SOURCE = 0;
+
+    /**
+     * The vertex the energy flows to.
+     */
+    private static final int SINK = 1;
+
+    /**
+     * The number of vertices.
+     */
+    private final int vertexCount;
+
+    /**
+     * The first edge of each vertex, or -1.
+     */
+    private final int[] head;
+
+    /**
+     * The next edge of the same vertex, or -1.
+     */
+    private int[] next;
+
+    /**
+     * The vertex each edge leads to, an edge and its reverse edge have consecutive identifiers.
+     */
+    private int[] to;
+
+    /**
+     * The capacity of each edge, 0 for the reverse edges.
+     */
+    private double[] capacity;
+
+    /**
+     * The flow of each edge, the flow of a reverse edge is the opposite of the flow of its edge.
+     */
+    private double[] flow;
+
+    /**
+     * The number of edges, reverse edges included.
+     */
+    private int edgeCount;
+
+    /**
+     * The edge from the source to each producer.
+     */
+    private final int[] producerEdges;
+
+    /**
+     * The edge from each consumer to the sink.
+     */
+    private final int[] consumerEdges;
+
+    /**
+     * The edge from the source to each group of the battery.
+     */
+    private final int[] dischargeEdges;
+
+    /**
+     * The edge from each group of the battery to the sink.
+     */
+    private final int[] chargeEdges;
+
+    /**
+     * The edge of each limited transporter.
+     */
+    private final int[] transporterEdges;
+
+    /**
+     * The throughput per tick of each limited transporter.
+     */
+    private final double[] throughputs;
+
+    /**
+     * The distance of each vertex from the source in the residual graph, or -1.
+     */
+    private final int[] levels;
+
+    /**
+     * The next edge to try for each vertex.
+     */
+    private final int[] iterators;
+
+    /**
+     * The vertices to visit, or the vertices of the current path.
+     */
+    private final int[] stack;
+
+    /**
+     * The edges of the current path.
+     */
+    private final int[] path;
+
+    /**
+     * The edges of the path of a cancelled flow towards the sink.
+     */
+    private final int[] tail;
+
+    /**
+     * The last search each vertex was visited by.
+     */
+    private final int[] marks;
+
+    /**
+     * The identifier of the current search.
+     */
+    private int stamp;
+
+    /**
+     * Build the flow network of an energy network.
+     * A cluster of transporters without limit is a single hub, a chain of limited transporters
+     * with two neighbors each is a single edge holding the lowest throughput of the chain.
+     *
+     * @param components The nodes of the network, by packed block position.
+     * @param clusters   The clusters of transporters of the network.
+     * @param producers  The producers of the network.
+     * @param consumers  The consumers of the network.
+     * @param storages   The storages of the network.
+     * @param groups     The indexes of the storages of each group of the battery.
+     */
+    FlowGraph(LongHashMap<NetworkNode> components, TransporterClusters clusters, NetworkNode[] producers,
+              NetworkNode[] consumers, NetworkNode[] storages, int[][] groups) {
+        int vertices = 2;
+        LongHashMap<Integer> vertexOf = new LongHashMap<>(producers.length + consumers.length + storages.length);
+        int[] producerVertices = new int[producers.length];
+        int[] consumerVertices = new int[consumers.length];
+        int[] storageVertices = new int[storages.length];
+        NetworkNode[][] roles = {producers, consumers, storages};
+        int[][] roleVertices = {producerVertices, consumerVertices, storageVertices};
+        for (int r = 0; r < roles.length; r++) {
+            for (int i = 0; i < roles[r].length; i++) {
+                Integer vertex = vertexOf.get(roles[r][i].position);
+                if (vertex == null) {
+                    vertex = vertices++;
+                    vertexOf.put(roles[r][i].position, vertex);
+                }
+                roleVertices[r][i] = vertex;
+            }
+        }
+
+        List<TransporterClusters.Cluster> all = clusters.all();
+        int[] hubs = new int[all.size()];
+        LongHashMap<Integer> inputs = new LongHashMap<>();
+        LongHashMap<Integer> outputs = new LongHashMap<>();
+        List<Integer> limitedInputs = new ArrayList<>();
+        List<Double> limitedThroughputs = new ArrayList<>();
+        for (TransporterClusters.Cluster cluster : all) {
+            if (cluster.limited == 0) {
+                hubs[cluster.index] = vertices++;
+                continue;
+            }
+            hubs[cluster.index] = -1;
+            for (Object value : cluster.members.values()) {
+                NetworkNode start = (NetworkNode) value;
+                if (inputs.containsKey(start.position)) {
+                    continue;
+                }
+                boolean limited = !Double.isInfinite(TransporterClusters.throughput(start));
+                boolean link = limited && isChainLink(components, start);
+                int input = vertices++;
+                int output = limited ? vertices++ : input;
+                double lowest = Double.POSITIVE_INFINITY;
+                ArrayDeque<NetworkNode> queue = new ArrayDeque<>();
+                inputs.put(start.position, input);
+                outputs.put(start.position, output);
+                queue.add(start);
+                while (!queue.isEmpty()) {
+                    NetworkNode current = queue.poll();
+                    lowest = Math.min(lowest, TransporterClusters.throughput(current));
+                    if (limited && !link) {
+                        break;
+                    }
+                    for (BlockFace face : EnergyNetwork.FACES) {
+                        NetworkNode neighbor = cluster.members.get(Positions.offset(current.position, face.getModX(), face.getModY(), face.getModZ()));
+                        if (neighbor == null || inputs.containsKey(neighbor.position)) {
+                            continue;
+                        }
+                        boolean same = limited
+                                ? !Double.isInfinite(TransporterClusters.throughput(neighbor)) && isChainLink(components, neighbor)
+                                : Double.isInfinite(TransporterClusters.throughput(neighbor));
+                        if (same) {
+                            inputs.put(neighbor.position, input);
+                            outputs.put(neighbor.position, output);
+                            queue.add(neighbor);
+                        }
+                    }
+                }
+                if (limited) {
+                    limitedInputs.add(input);
+                    limitedThroughputs.add(lowest);
+                }
+            }
+        }
+        int firstGroup = vertices;
+        vertices += 2 * groups.length;
+
+        this.vertexCount = vertices;
+        this.head = new int[vertices];
+        Arrays.fill(this.head, -1);
+        int edges = 2 * (limitedInputs.size() + (producers.length + consumers.length + storages.length) * (EnergyNetwork.FACES.length + 2) + 2 * groups.length);
+        this.next = new int[edges];
+        this.to = new int[edges];
+        this.capacity = new double[edges];
+        this.flow = new double[edges];
+
+        this.transporterEdges = new int[limitedInputs.size()];
+        this.throughputs = new double[limitedInputs.size()];
+        for (int t = 0; t < this.transporterEdges.length; t++) {
+            int input = limitedInputs.get(t);
+            this.throughputs[t] = limitedThroughputs.get(t);
+            this.transporterEdges[t] = this.addEdge(input, input + 1, this.throughputs[t]);
+        }
+
+        LongHashMap<Boolean> connected = new LongHashMap<>();
+        for (TransporterClusters.Cluster cluster : all) {
+            int hub = hubs[cluster.index];
+            if (hub >= 0) {
+                for (long position : cluster.attachments.keys()) {
+                    Integer vertex = vertexOf.get(position);
+                    if (vertex == null) {
+                        continue;
+                    }
+                    this.addEdge(hub, vertex, Double.POSITIVE_INFINITY);
+                    if (!MechanicType.CONSUMER.isInstance(components.get(position).component)) {
+                        this.addEdge(vertex, hub, Double.POSITIVE_INFINITY);
+                    }
+                }
+                continue;
+            }
+            for (Object value : cluster.members.values()) {
+                NetworkNode member = (NetworkNode) value;
+                int input = inputs.get(member.position);
+                int output = outputs.get(member.position);
+                for (BlockFace face : EnergyNetwork.FACES) {
+                    long position = Positions.offset(member.position, face.getModX(), face.getModY(), face.getModZ());
+                    Integer neighborInput = inputs.get(position);
+                    if (neighborInput != null) {
+                        if (neighborInput != input) {
+                            this.connect(connected, output, neighborInput);
+                        }
+                        continue;
+                    }
+                    NetworkNode neighbor = components.get(position);
+                    Integer vertex = vertexOf.get(position);
+                    if (neighbor != null && vertex != null) {
+                        this.connect(connected, output, vertex);
+                        if (!MechanicType.CONSUMER.isInstance(neighbor.component)) {
+                            this.connect(connected, vertex, input);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int r : new int[]{0, 2}) {
+            for (int i = 0; i < roles[r].length; i++) {
+                NetworkNode node = roles[r][i];
+                for (BlockFace face : EnergyNetwork.FACES) {
+                    Integer neighbor = vertexOf.get(Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ()));
+                    if (neighbor != null) {
+                        this.addEdge(roleVertices[r][i], neighbor, Double.POSITIVE_INFINITY);
+                    }
+                }
+            }
+        }
+
+        this.producerEdges = new int[producers.length];
+        for (int p = 0; p < producers.length; p++) {
+            this.producerEdges[p] = this.addEdge(SOURCE, producerVertices[p], 0);
+        }
+        this.consumerEdges = new int[consumers.length];
+        for (int c = 0; c < consumers.length; c++) {
+            this.consumerEdges[c] = this.addEdge(consumerVertices[c], SINK, 0);
+        }
+        this.dischargeEdges = new int[groups.length];
+        this.chargeEdges = new int[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            int discharge = firstGroup + 2 * g;
+            int charge = discharge + 1;
+            this.dischargeEdges[g] = this.addEdge(SOURCE, discharge, 0);
+            this.chargeEdges[g] = this.addEdge(charge, SINK, 0);
+            for (int s : groups[g]) {
+                this.addEdge(discharge, storageVertices[s], Double.POSITIVE_INFINITY);
+                this.addEdge(storageVertices[s], charge, Double.POSITIVE_INFINITY);
+            }
+        }
+
+        this.levels = new int[vertices];
+        this.iterators = new int[vertices];
+        this.stack = new int[vertices + 1];
+        this.path = new int[vertices];
+        this.tail = new int[vertices];
+        this.marks = new int[vertices];
+    }
+
+    /**
+     * Get if a network has a transporter with a limited throughput.
+     *
+     * @param clusters The clusters of transporters of the network.
+     * @return If the distribution of the network must be computed as a flow.
+     */
+    static boolean isLimited(TransporterClusters clusters) {
+        for (TransporterClusters.Cluster cluster : clusters.all()) {
+            if (cluster.limited > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get if a transporter only links two components, so it can be merged with the other links of its chain.
+     *
+     * @param components The nodes of the network, by packed block position.
+     * @param node       The transporter.
+     * @return If the transporter has exactly two neighbors.
+     */
+    private static boolean isChainLink(LongHashMap<NetworkNode> components, NetworkNode node) {
+        int neighbors = 0;
+        for (BlockFace face : EnergyNetwork.FACES) {
+            if (components.containsKey(Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ()))) {
+                neighbors++;
+            }
+        }
+        return neighbors == 2;
+    }
+
+    /**
+     * Set the number of ticks the transporters carry energy for.
+     *
+     * @param elapsedTicks The number of ticks since the last update of the network.
+     */
+    void setElapsedTicks(int elapsedTicks) {
+        for (int t = 0; t < this.transporterEdges.length; t++) {
+            this.capacity[this.transporterEdges[t]] = this.throughputs[t] * elapsedTicks;
+        }
+    }
+
+    /**
+     * Set the energy a producer can give.
+     *
+     * @param producer The index of the producer.
+     * @param energy   The supply of the producer.
+     */
+    void setSupply(int producer, double energy) {
+        this.capacity[this.producerEdges[producer]] = energy;
+    }
+
+    /**
+     * Set the energy a consumer can receive.
+     *
+     * @param consumer The index of the consumer.
+     * @param energy   The demand of the consumer.
+     */
+    void setDemand(int consumer, double energy) {
+        this.capacity[this.consumerEdges[consumer]] = energy;
+    }
+
+    /**
+     * Set the energy a group of the battery can give.
+     *
+     * @param group  The group.
+     * @param energy The energy the group can give.
+     */
+    void setDischarge(int group, double energy) {
+        this.capacity[this.dischargeEdges[group]] = energy;
+    }
+
+    /**
+     * Set the energy a group of the battery can store.
+     *
+     * @param group  The group.
+     * @param energy The energy the group can store.
+     */
+    void setCharge(int group, double energy) {
+        this.capacity[this.chargeEdges[group]] = energy;
+    }
+
+    /**
+     * Get the energy given by a producer.
+     *
+     * @param producer The index of the producer.
+     * @return The flow leaving the producer.
+     */
+    double getSupplied(int producer) {
+        return this.flow[this.producerEdges[producer]];
+    }
+
+    /**
+     * Get the energy received by a consumer.
+     *
+     * @param consumer The index of the consumer.
+     * @return The flow reaching the consumer.
+     */
+    double getDelivered(int consumer) {
+        return this.flow[this.consumerEdges[consumer]];
+    }
+
+    /**
+     * Get the energy given by a group of the battery.
+     *
+     * @param group The group.
+     * @return The flow leaving the group.
+     */
+    double getDischarged(int group) {
+        return this.flow[this.dischargeEdges[group]];
+    }
+
+    /**
+     * Get the energy stored in a group of the battery.
+     *
+     * @param group The group.
+     * @return The flow reaching the group.
+     */
+    double getCharged(int group) {
+        return this.flow[this.chargeEdges[group]];
+    }
+
+    /**
+     * Make the flow of the previous update fit the new capacities.
+     * The flow exceeding the capacity of an edge is cancelled along paths from the source to the sink,
+     * so the rest of the flow is kept. The flow is cleared if it cannot be repaired.
+     */
+    void repair() {
+        for (int e = 0; e < this.edgeCount; e += 2) {
+            double excess = this.flow[e] - this.capacity[e];
+            if (excess > EPSILON && !this.cancel(e, excess)) {
+                Arrays.fill(this.flow, 0, this.edgeCount, 0);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Push as much energy as possible from the source to the sink, on top of the current flow.
+     *
+     * @return The energy pushed.
+     */
+    double augment() {
+        double total = 0;
+        while (this.computeLevels()) {
+            System.arraycopy(this.head, 0, this.iterators, 0, this.vertexCount);
+            double pushed;
+            while ((pushed = this.pushPath()) > 0) {
+                total += pushed;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Compute the distance of each vertex from the source in the residual graph.
+     *
+     * @return If the sink is reachable.
+     */
+    private boolean computeLevels() {
+        Arrays.fill(this.levels, -1);
+        this.levels[SOURCE] = 0;
+        int first = 0;
+        int last = 0;
+        this.stack[last++] = SOURCE;
+        while (first < last) {
+            int vertex = this.stack[first++];
+            for (int e = this.head[vertex]; e != -1; e = this.next[e]) {
+                int target = this.to[e];
+                if (this.levels[target] < 0 && this.residual(e) > EPSILON) {
+                    this.levels[target] = this.levels[vertex] + 1;
+                    this.stack[last++] = target;
+                }
+            }
+        }
+        return this.levels[SINK] >= 0;
+    }
+
+    /**
+     * Find a path from the source to the sink following the levels and push energy along it.
+     *
+     * @return The energy pushed, or 0 if no path is left.
+     */
+    private double pushPath() {
+        int depth = 0;
+        int vertex = SOURCE;
+        while (vertex != SINK) {
+            int e = this.iterators[vertex];
+            while (e != -1 && (this.residual(e) <= EPSILON || this.levels[this.to[e]] != this.levels[vertex] + 1)) {
+                e = this.next[e];
+            }
+            this.iterators[vertex] = e;
+            if (e == -1) {
+                if (depth == 0) {
+                    return 0;
+                }
+                this.levels[vertex] = -1;
+                vertex = this.to[this.path[--depth] ^ 1];
+                this.iterators[vertex] = this.next[this.iterators[vertex]];
+                continue;
+            }
+            this.path[depth++] = e;
+            vertex = this.to[e];
+        }
+
+        double pushed = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < depth; i++) {
+            pushed = Math.min(pushed, this.residual(this.path[i]));
+        }
+        for (int i = 0; i < depth; i++) {
+            this.addFlow(this.path[i], pushed);
+        }
+        return pushed;
+    }
+
+    /**
+     * Cancel some flow going through an edge, along a path from the source to the sink.
+     *
+     * @param edge   The edge.
+     * @param excess The flow to cancel.
+     * @return If the whole excess has been cancelled.
+     */
+    private boolean cancel(int edge, double excess) {
+        while (excess > EPSILON) {
+            this.stamp++;
+            int before = this.trace(this.to[edge ^ 1], SOURCE, true, this.path);
+            if (before < 0) {
+                return false;
+            }
+            this.stamp++;
+            this.marks[this.to[edge ^ 1]] = this.stamp;
+            for (int i = 0; i < before; i++) {
+                this.marks[this.to[this.path[i] ^ 1]] = this.stamp;
+            }
+            int after = this.trace(this.to[edge], SINK, false, this.tail);
+            if (after < 0) {
+                return false;
+            }
+            double cancelled = Math.min(excess, this.flow[edge]);
+            for (int i = 0; i < before; i++) {
+                cancelled = Math.min(cancelled, this.flow[this.path[i]]);
+            }
+            for (int i = 0; i < after; i++) {
+                cancelled = Math.min(cancelled, this.flow[this.tail[i]]);
+            }
+            this.addFlow(edge, -cancelled);
+            for (int i = 0; i < before; i++) {
+                this.addFlow(this.path[i], -cancelled);
+            }
+            for (int i = 0; i < after; i++) {
+                this.addFlow(this.tail[i], -cancelled);
+            }
+            excess -= cancelled;
+        }
+        return true;
+    }
+
+    /**
+     * Find a path of edges carrying flow between a vertex and the source or the sink,
+     * avoiding the vertices already marked by the current search.
+     *
+     * @param from     The vertex the search starts from.
+     * @param target   The source or the sink.
+     * @param backward If the path is followed against the flow, towards the source.
+     * @param edges    The array filled with the edges of the path.
+     * @return The number of edges of the path, or -1 if there is none.
+     */
+    private int trace(int from, int target, boolean backward, int[] edges) {
+        int stamp = this.stamp;
+        int depth = 0;
+        this.stack[0] = from;
+        this.marks[from] = stamp;
+        this.iterators[from] = this.head[from];
+        while (this.stack[depth] != target) {
+            int vertex = this.stack[depth];
+            int e = this.iterators[vertex];
+            while (e != -1 && (this.marks[this.to[e]] == stamp || (backward ? -this.flow[e] : this.flow[e]) <= EPSILON)) {
+                e = this.next[e];
+            }
+            if (e == -1) {
+                if (depth == 0) {
+                    return -1;
+                }
+                depth--;
+                continue;
+            }
+            this.iterators[vertex] = this.next[e];
+            int reached = this.to[e];
+            this.marks[reached] = stamp;
+            this.iterators[reached] = this.head[reached];
+            edges[depth++] = backward ? e ^ 1 : e;
+            this.stack[depth] = reached;
+        }
+        return depth;
+    }
+
+    /**
+     * Get the energy an edge can still carry.
+     *
+     * @param edge The edge.
+     * @return The residual capacity of the edge.
+     */
+    private double residual(int edge) {
+        return this.capacity[edge] - this.flow[edge];
+    }
+
+    /**
+     * Add flow to an edge and remove it from its reverse edge.
+     *
+     * @param edge   The edge.
+     * @param energy The flow to add.
+     */
+    private void addFlow(int edge, double energy) {
+        this.flow[edge] += energy;
+        this.flow[edge ^ 1] -= energy;
+    }
+
+    /**
+     * Add an edge without capacity limit between two vertices, unless they are already connected.
+     *
+     * @param connected The pairs of vertices already connected.
+     * @param from      The vertex the edge leaves.
+     * @param target    The vertex the edge leads to.
+     */
+    private void connect(LongHashMap<Boolean> connected, int from, int target) {
+        long key = ((long) from << 32) | target;
+        if (!connected.containsKey(key)) {
+            connected.put(key, Boolean.TRUE);
+            this.addEdge(from, target, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    /**
+     * Add an edge and its reverse edge.
+     *
+     * @param from     The vertex the edge leaves.
+     * @param target   The vertex the edge leads to.
+     * @param capacity The capacity of the edge.
+     * @return The identifier of the edge.
+     */
+    private int addEdge(int from, int target, double capacity) {
+        if (this.edgeCount + 2 > this.to.length) {
+            int length = Math.max(8, this.to.length << 1);
+            this.next = Arrays.copyOf(this.next, length);
+            this.to = Arrays.copyOf(this.to, length);
+            this.capacity = Arrays.copyOf(this.capacity, length);
+            this.flow = Arrays.copyOf(this.flow, length);
+        }
+        int edge = this.edgeCount;
+        this.link(edge, from, target, capacity);
+        this.link(edge + 1, target, from, 0);
+        this.edgeCount += 2;
+        return edge;
+    }
+
+    /**
+     * Fill a single directed edge and add it to the edges of its vertex.
+     *
+     * @param edge     The identifier of the edge.
+     * @param from     The vertex the edge leaves.
+     * @param target   The vertex the edge leads to.
+     * @param capacity The capacity of the edge.
+     */
+    private void link(int edge, int from, int target, double capacity) {
+        this.to[edge] = target;
+        this.capacity[edge] = capacity;
+        this.next[edge] = this.head[from];
+        this.head[from] = edge;
+    }
+}
@@ -0,0 +1,72 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+/**
+ * Represents a component placed in a network, with its packed block position.
+ */
+final class NetworkNode {
+
+    /**
+     * The packed block position of the component.
+     */
+    final long position;
+
+    /**
+     * The component.
+     */
+    final EnergyComponent<?> component;
+
+    /**
+     * The slot of the node in the partition of its first mechanic type, or -1 if it is in no partition.
+     */
+    int slot = -1;
+
+    /**
+     * The world of the component.
+     */
+    private final World world;
+
+    /**
+     * The location of the component, created the first time it is needed.
+     */
+    private Location location;
+
+    /**
+     * Creates a new node.
+     *
+     * @param world     The world of the component.
+     * @param position  The packed block position of the component.
+     * @param component The component.
+     */
+    NetworkNode(World world, long position, EnergyComponent<?> component) {
+        this.world = world;
+        this.position = position;
+        this.component = component;
+    }
+
+    /**
+     * Copy the node for another network.
+     * The energy of a storage is carried over by the battery of the network, see {@link VirtualBattery}.
+     *
+     * @param world The world of the other network.
+     * @return The new node.
+     */
+    NetworkNode copy(World world) {
+        return new NetworkNode(world, this.position, this.component);
+    }
+
+    /**
+     * Get the location of the component.
+     *
+     * @return The location of the component.
+     */
+    Location getLocation() {
+        if (this.location == null) {
+            this.location = new Location(this.world, Positions.x(this.position), Positions.y(this.position), Positions.z(this.position));
+        }
+        return this.location;
+    }
+}
@@ -0,0 +1,489 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.EnergyAPI;
+import fr.traqueur.energylib.api.mechanics.ThreadSafeMechanic;
+import fr.traqueur.energylib.api.types.MechanicType;
+import fr.traqueur.energylib.api.utils.LongHashMap;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Location;
+import org.bukkit.block.BlockFace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * The components reachable by the consumers and the producers of a network.
+ * The routes are computed once from the topology of the network and are immutable,
+ * the network builds new routes when a component is added or removed.
+ */
+final class NetworkRoutes {
+
+    /**
+     * An empty array of indexes.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The producers of the network.
+     */
+    final NetworkNode[] producers;
+
+    /**
+     * The consumers of the network.
+     */
+    final NetworkNode[] consumers;
+
+    /**
+     * The storages of the network.
+     */
+    final NetworkNode[] storages;
+
+    /**
+     * The indexes of the producers grouped by chunk.
+     */
+    final int[][] producerBatches;
+
+    /**
+     * The indexes of the consumers grouped by chunk.
+     */
+    final int[][] consumerBatches;
+
+    /**
+     * The indexes of the storages grouped by chunk.
+     */
+    final int[][] storageBatches;
+
+    /**
+     * If all the mechanics of the network are thread-safe, so they are called without being scheduled.
+     */
+    final boolean threadSafe;
+
+    /**
+     * The buffers of the updates of the network.
+     */
+    private final TickBuffers buffers;
+
+    /**
+     * The indexes of the producers reachable by each consumer, in the same order as {@link #consumers}.
+     */
+    final int[][] consumerProducers;
+
+    /**
+     * The groups of the virtual battery reachable by each consumer, in the same order as {@link #consumers}.
+     */
+    final int[][] consumerBatteries;
+
+    /**
+     * The groups of the virtual battery reachable by each producer, in the same order as {@link #producers}.
+     */
+    final int[][] producerBatteries;
+
+    /**
+     * The storages of the network, aggregated by connected group,
+     * or one group per storage if the network has a flow network.
+     */
+    final VirtualBattery battery;
+
+    /**
+     * The flow network of the network, or null if all its transporters have an infinite throughput.
+     */
+    final FlowGraph flow;
+
+    /**
+     * Compute the routes of a network.
+     *
+     * @param components The nodes of the network, by packed block position.
+     * @param roles      The partitions of the nodes of the network.
+     * @param clusters   The clusters of transporters of the network.
+     * @param retired    The batteries retired since the previous routes were computed.
+     */
+    NetworkRoutes(LongHashMap<NetworkNode> components, ComponentRoles roles, TransporterClusters clusters, List<VirtualBattery> retired) {
+        this.producers = roles.get(MechanicType.PRODUCER);
+        this.consumers = roles.get(MechanicType.CONSUMER);
+        this.storages = roles.get(MechanicType.STORAGE);
+        this.producerBatches = batch(this.producers);
+        this.consumerBatches = batch(this.consumers);
+        this.storageBatches = batch(this.storages);
+        this.threadSafe = isThreadSafe(components);
+        this.buffers = new TickBuffers(this.producers.length, this.consumers.length);
+
+        Labels producerLabels = new Labels(components, clusters, MechanicType.PRODUCER, this.producers);
+        Labels storageLabels = new Labels(components, clusters, MechanicType.STORAGE, this.storages);
+        // with limited transporters each storage is its own group, the energy goes from one storage
+        // to another through the flow network only, so through the transporters between them
+        boolean limited = FlowGraph.isLimited(clusters);
+
+        this.consumerProducers = new int[this.consumers.length][];
+        this.consumerBatteries = new int[this.consumers.length][];
+        for (int i = 0; i < this.consumers.length; i++) {
+            this.consumerProducers[i] = producerLabels.reachableFrom(this.consumers[i]);
+            this.consumerBatteries[i] = limited ? storageLabels.reachableFrom(this.consumers[i]) : storageLabels.groupsFrom(this.consumers[i]);
+        }
+
+        this.producerBatteries = new int[this.producers.length][];
+        for (int i = 0; i < this.producers.length; i++) {
+            this.producerBatteries[i] = limited ? storageLabels.reachableFrom(this.producers[i]) : storageLabels.groupsFrom(this.producers[i]);
+        }
+
+        int[][] groups = limited ? singletons(this.storages.length) : storageLabels.members.toArray(new int[0][]);
+        this.battery = new VirtualBattery(this.storages, groups, retired);
+        this.flow = limited
+                ? new FlowGraph(components, clusters, this.producers, this.consumers, this.storages, groups)
+                : null;
+    }
+
+    /**
+     * Build groups holding a single storage each.
+     *
+     * @param storages The number of storages.
+     * @return The groups, the group at an index holds the storage at the same index.
+     */
+    private static int[][] singletons(int storages) {
+        int[][] groups = new int[storages][];
+        for (int i = 0; i < storages; i++) {
+            groups[i] = new int[]{i};
+        }
+        return groups;
+    }
+
+    /**
+     * Get the buffers of the next update.
+     * A network runs a single update at a time, so the buffers are never shared by two updates.
+     *
+     * @return The cleared buffers of the next update.
+     */
+    synchronized TickBuffers nextBuffers() {
+        this.buffers.reset();
+        return this.buffers;
+    }
+
+    /**
+     * Run an action for each node, with one scheduled task per chunk running all the nodes of the chunk.
+     * A chunk is always owned by a single region, so the action runs on the thread owning each node.
+     * If all the mechanics of the network are thread-safe, the action runs directly on the calling thread.
+     * The time spent running the batches is added to the cost, whatever thread runs them.
+     *
+     * @param api     The API instance.
+     * @param nodes   The nodes.
+     * @param batches The indexes of the nodes grouped by chunk.
+     * @param action  The action, called with the index of each node.
+     * @param cost    The time spent running the batches, in nanoseconds.
+     * @return A future completed when the action has run for every node.
+     */
+    CompletableFuture<Void> runBatches(EnergyAPI api, NetworkNode[] nodes, int[][] batches, IntConsumer action, LongAdder cost) {
+        return this.runBatches(api, nodes, batches, action, cost, false);
+    }
+
+    /**
+     * Run an action for each node, with one scheduled task per chunk running all the nodes of the chunk,
+     * see {@link #runBatches(EnergyAPI, NetworkNode[], int[][], IntConsumer, LongAdder)}.
+     * The batches of the chunks owned by the current thread can run directly on it instead of being scheduled.
+     *
+     * @param api     The API instance.
+     * @param nodes   The nodes.
+     * @param batches The indexes of the nodes grouped by chunk.
+     * @param action  The action, called with the index of each node.
+     * @param cost    The time spent running the batches, in nanoseconds.
+     * @param inline  If the batches of the chunks owned by the current thread run directly on it.
+     * @return A future completed when the action has run for every node.
+     */
+    CompletableFuture<Void> runBatches(EnergyAPI api, NetworkNode[] nodes, int[][] batches, IntConsumer action, LongAdder cost, boolean inline) {
+        if (this.threadSafe) {
+            try {
+                for (int[] batch : batches) {
+                    runBatch(batch, action, cost);
+                }
+                return CompletableFuture.completedFuture(null);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture[batches.length];
+        for (int i = 0; i < batches.length; i++) {
+            int[] batch = batches[i];
+            Location location = nodes[batch[0]].getLocation();
+            if (inline && api.getScheduler().isOwnedByCurrentRegion(location)) {
+                try {
+                    runBatch(batch, action, cost);
+                    futures[i] = CompletableFuture.completedFuture(null);
+                } catch (RuntimeException e) {
+                    futures[i] = CompletableFuture.failedFuture(e);
+                }
+            } else {
+                futures[i] = api.getScheduler().runAtLocation(location, (t) -> runBatch(batch, action, cost));
+            }
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Run an action for each node of a batch, a failing node does not prevent the others from running.
+     *
+     * @param batch  The indexes of the nodes.
+     * @param action The action, called with the index of each node.
+     * @param cost   The time spent running the batches, in nanoseconds.
+     */
+    private static void runBatch(int[] batch, IntConsumer action, LongAdder cost) {
+        long start = System.nanoTime();
+        RuntimeException failure = null;
+        for (int index : batch) {
+            try {
+                action.accept(index);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        cost.add(System.nanoTime() - start);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Get if all the mechanics of a network are thread-safe.
+     *
+     * @param components The nodes of the network, by packed block position.
+     * @return If every mechanic is a {@link ThreadSafeMechanic}.
+     */
+    private static boolean isThreadSafe(LongHashMap<NetworkNode> components) {
+        for (Object value : components.values()) {
+            if (!(((NetworkNode) value).component.getMechanic() instanceof ThreadSafeMechanic)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Group the indexes of nodes by chunk, in the order the chunks are first met.
+     *
+     * @param nodes The nodes.
+     * @return The indexes of the nodes of each chunk.
+     */
+    private static int[][] batch(NetworkNode[] nodes) {
+        LongHashMap<Integer> chunks = new LongHashMap<>();
+        int[] groups = new int[nodes.length];
+        int[] sizes = new int[nodes.length];
+        int count = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            long chunk = Positions.chunkKey(nodes[i].position);
+            Integer group = chunks.get(chunk);
+            if (group == null) {
+                group = count++;
+                chunks.put(chunk, group);
+            }
+            groups[i] = group;
+            sizes[group]++;
+        }
+        int[][] batches = new int[count][];
+        for (int group = 0; group < count; group++) {
+            batches[group] = new int[sizes[group]];
+            sizes[group] = 0;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            batches[groups[i]][sizes[groups[i]]++] = i;
+        }
+        return batches;
+    }
+
+    /**
+     * The connected groups of the transporters and of the components of a mechanic type.
+     * Energy only flows through transporters and components of the searched type,
+     * so every component of a group reaches the same components of this type.
+     * The search steps over the clusters of transporters as single hubs.
+     */
+    private static final class Labels {
+
+        /**
+         * The clusters of transporters of the network.
+         */
+        private final TransporterClusters clusters;
+
+        /**
+         * The group of each component of the searched type.
+         */
+        private final LongHashMap<Integer> labels;
+
+        /**
+         * The group of each cluster of transporters, by index of the cluster.
+         */
+        private final int[] clusterLabels;
+
+        /**
+         * The indexes of the components of the searched type in each group.
+         */
+        private final List<int[]> members;
+
+        /**
+         * Compute the groups of a network.
+         *
+         * @param components The nodes of the network, by packed block position.
+         * @param clusters   The clusters of transporters of the network.
+         * @param type       The searched mechanic type.
+         * @param targets    The components of the searched type, the groups hold indexes in this array.
+         */
+        private Labels(LongHashMap<NetworkNode> components, TransporterClusters clusters, MechanicType type, NetworkNode[] targets) {
+            this.clusters = clusters;
+            this.labels = new LongHashMap<>(targets.length);
+            this.clusterLabels = new int[clusters.all().size()];
+            this.members = new ArrayList<>();
+            Arrays.fill(this.clusterLabels, -1);
+
+            LongHashMap<Integer> indexes = new LongHashMap<>(targets.length);
+            for (int i = 0; i < targets.length; i++) {
+                indexes.put(targets[i].position, i);
+            }
+
+            ArrayDeque<Object> queue = new ArrayDeque<>();
+            List<Integer> found = new ArrayList<>();
+            List<Object> starts = new ArrayList<>(clusters.all());
+            starts.addAll(Arrays.asList(targets));
+            for (Object start : starts) {
+                int label = this.members.size();
+                if (!this.mark(start, label, indexes, found)) {
+                    continue;
+                }
+                queue.add(start);
+                while (!queue.isEmpty()) {
+                    Object current = queue.poll();
+                    if (current instanceof TransporterClusters.Cluster cluster) {
+                        for (long position : cluster.attachments.keys()) {
+                            NetworkNode attached = components.get(position);
+                            if (attached != null && type.isInstance(attached.component) && this.mark(attached, label, indexes, found)) {
+                                queue.add(attached);
+                            }
+                        }
+                        continue;
+                    }
+                    long position = ((NetworkNode) current).position;
+                    for (BlockFace face : EnergyNetwork.FACES) {
+                        long neighbor = Positions.offset(position, face.getModX(), face.getModY(), face.getModZ());
+                        Object next = clusters.get(neighbor);
+                        if (next == null) {
+                            NetworkNode node = components.get(neighbor);
+                            next = node != null && type.isInstance(node.component) ? node : null;
+                        }
+                        if (next != null && this.mark(next, label, indexes, found)) {
+                            queue.add(next);
+                        }
+                    }
+                }
+                this.members.add(found.isEmpty() ? EMPTY : found.stream().mapToInt(Integer::intValue).toArray());
+                found.clear();
+            }
+        }
+
+        /**
+         * Give a group to a cluster or to a component of the searched type, if it has none.
+         *
+         * @param item    The cluster or the node.
+         * @param label   The group.
+         * @param indexes The index of each component of the searched type, by packed block position.
+         * @param found   The indexes of the components of the searched type found in the group.
+         * @return If the item had no group.
+         */
+        private boolean mark(Object item, int label, LongHashMap<Integer> indexes, List<Integer> found) {
+            if (item instanceof TransporterClusters.Cluster cluster) {
+                if (this.clusterLabels[cluster.index] >= 0) {
+                    return false;
+                }
+                this.clusterLabels[cluster.index] = label;
+                return true;
+            }
+            long position = ((NetworkNode) item).position;
+            if (this.labels.containsKey(position)) {
+                return false;
+            }
+            this.labels.put(position, label);
+            found.add(indexes.get(position));
+            return true;
+        }
+
+        /**
+         * Get the group of a block.
+         *
+         * @param position The packed position of the block.
+         * @return The group, or null if the block is neither a transporter nor of the searched type.
+         */
+        private Integer labelOf(long position) {
+            TransporterClusters.Cluster cluster = this.clusters.get(position);
+            return cluster != null ? Integer.valueOf(this.clusterLabels[cluster.index]) : this.labels.get(position);
+        }
+
+        /**
+         * Get the components of the searched type reachable from a node.
+         *
+         * @param source The node the energy flows from or to.
+         * @return The indexes of the reachable components, the array must not be modified.
+         */
+        private int[] reachableFrom(NetworkNode source) {
+            int[] reached = this.groupsFrom(source);
+            if (reached.length == 0) {
+                return EMPTY;
+            }
+            if (reached.length == 1) {
+                return this.members.get(reached[0]);
+            }
+            int length = 0;
+            for (int label : reached) {
+                length += this.members.get(label).length;
+            }
+            int[] result = new int[length];
+            int offset = 0;
+            for (int label : reached) {
+                int[] group = this.members.get(label);
+                System.arraycopy(group, 0, result, offset, group.length);
+                offset += group.length;
+            }
+            return result;
+        }
+
+        /**
+         * Get the groups holding components of the searched type reachable from a node.
+         *
+         * @param source The node the energy flows from or to.
+         * @return The reachable groups.
+         */
+        private int[] groupsFrom(NetworkNode source) {
+            int[] reached = new int[EnergyNetwork.FACES.length + 1];
+            int count = 0;
+            Integer own = this.labelOf(source.position);
+            if (own != null && this.members.get(own).length > 0) {
+                reached[count++] = own;
+            }
+            for (BlockFace face : EnergyNetwork.FACES) {
+                Integer label = this.labelOf(Positions.offset(source.position, face.getModX(), face.getModY(), face.getModZ()));
+                if (label != null && this.members.get(label).length > 0 && !contains(reached, count, label)) {
+                    reached[count++] = label;
+                }
+            }
+            return count == 0 ? EMPTY : Arrays.copyOf(reached, count);
+        }
+
+        /**
+         * Get if the first values of an array contain a value.
+         *
+         * @param values The array.
+         * @param count  The number of values to check.
+         * @param value  The value.
+         * @return If the value is found.
+         */
+        private static boolean contains(int[] values, int count, int value) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
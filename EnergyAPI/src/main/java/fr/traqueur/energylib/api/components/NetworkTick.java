@@ -0,0 +1,402 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.EnergyAPI;
+import fr.traqueur.energylib.api.mechanics.EnergyConsumer;
+import fr.traqueur.energylib.api.mechanics.EnergyProducer;
+import fr.traqueur.energylib.api.types.DistributionMode;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One update of a network, split in three steps.
+ * The snapshot step produces the energy and reads the supply and the demands on the region threads,
+ * the compute step works on this immutable snapshot off the region threads,
+ * then the apply step writes the results back to the consumers and extracts the energy handed out
+ * from the producers on the region threads, the energy nobody took stays in the producers.
+ * The storages are charged and discharged through the {@link VirtualBattery} of the network.
+ * The numbers live in the {@link TickBuffers} of the network, reused from one update to the next.
+ */
+final class NetworkTick {
+
+    /**
+     * An empty array of groups.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The API instance.
+     */
+    private final EnergyAPI api;
+
+    /**
+     * The routes of the network.
+     */
+    private final NetworkRoutes routes;
+
+    /**
+     * The way the energy is handed out.
+     */
+    private final DistributionMode mode;
+
+    /**
+     * The number of ticks since the last update of the network.
+     */
+    private final int elapsedTicks;
+
+    /**
+     * The excess energy of each producer, then the energy left in it.
+     */
+    private final double[] supplies;
+
+    /**
+     * The energy handed out from each producer.
+     */
+    private final double[] extracted;
+
+    /**
+     * The energy demand of each consumer.
+     */
+    private final double[] demands;
+
+    /**
+     * The energy given to each consumer.
+     */
+    private final double[] received;
+
+    /**
+     * If each consumer received all the energy it asked for.
+     */
+    private final boolean[] satisfied;
+
+    /**
+     * The energy handed out to the consumers and settled with the storages.
+     */
+    private double movedEnergy;
+
+    /**
+     * The time spent calling the mechanics, and computing the transfers when the network is thread-safe, in nanoseconds.
+     */
+    private final LongAdder cost;
+
+    /**
+     * Creates the update of a network.
+     *
+     * @param api          The API instance.
+     * @param routes       The routes of the network.
+     * @param mode         The way the energy is handed out.
+     * @param elapsedTicks The number of ticks since the last update of the network.
+     */
+    NetworkTick(EnergyAPI api, NetworkRoutes routes, DistributionMode mode, int elapsedTicks) {
+        this.api = api;
+        this.routes = routes;
+        this.mode = mode;
+        this.elapsedTicks = elapsedTicks;
+        TickBuffers buffers = routes.nextBuffers();
+        this.supplies = buffers.supplies;
+        this.extracted = buffers.extracted;
+        this.demands = buffers.demands;
+        this.received = buffers.received;
+        this.satisfied = buffers.satisfied;
+        this.cost = new LongAdder();
+    }
+
+    /**
+     * Run the update.
+     * The compute step runs on the thread completing the snapshot when the network is thread-safe,
+     * since it is already off the region threads, and on the common pool otherwise.
+     *
+     * @return A future completed when every mechanic has been updated.
+     */
+    CompletableFuture<Void> run() {
+        CompletableFuture<Void> snapshot = this.snapshot();
+        CompletableFuture<Void> computed = this.routes.threadSafe
+                ? snapshot.thenRun(this::compute)
+                : snapshot.thenRunAsync(this::compute);
+        return computed.thenCompose((t) -> this.apply());
+    }
+
+    /**
+     * Get the energy moved by the update, once it is run.
+     *
+     * @return The energy handed out to the consumers and settled with the storages.
+     */
+    double getMovedEnergy() {
+        return this.movedEnergy;
+    }
+
+    /**
+     * Get the cost of the update, once it is run.
+     * This is the time the update kept the region threads busy, or the thread of the pool for a thread-safe network,
+     * while the time spent waiting for these threads is not counted.
+     *
+     * @return The time spent calling the mechanics, and computing the transfers when the network is thread-safe, in nanoseconds.
+     */
+    long getCost() {
+        return this.cost.sum();
+    }
+
+    /**
+     * Produce the energy and read the supply and the demands, and the storages never read before.
+     *
+     * @return A future completed when the snapshot is taken.
+     */
+    private CompletableFuture<Void> snapshot() {
+        NetworkNode[] producers = this.routes.producers;
+        NetworkNode[] consumers = this.routes.consumers;
+        NetworkNode[] storages = this.routes.storages;
+        return CompletableFuture.allOf(
+                this.routes.runBatches(this.api, producers, this.routes.producerBatches, (i) -> {
+                    EnergyProducer producer = (EnergyProducer) producers[i].component.getMechanic();
+                    producer.produce(producers[i].getLocation(), this.elapsedTicks);
+                    this.supplies[i] = Math.max(0, producer.getExcessEnergy());
+                }, this.cost),
+                this.routes.runBatches(this.api, consumers, this.routes.consumerBatches, (i) -> {
+                    this.demands[i] = Math.max(0, ((EnergyConsumer) consumers[i].component.getMechanic()).getEnergyDemand(this.elapsedTicks));
+                }, this.cost),
+                this.routes.battery.needsRead()
+                        ? this.routes.runBatches(this.api, storages, this.routes.storageBatches, this.routes.battery::read, this.cost)
+                        : CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Compute the energy given to each consumer and stored in or taken from each storage.
+     * This step only reads the snapshot and never calls a mechanic.
+     */
+    private void compute() {
+        long start = System.nanoTime();
+        VirtualBattery battery = this.routes.battery;
+        System.arraycopy(this.supplies, 0, this.extracted, 0, this.supplies.length);
+        synchronized (battery) {
+            boolean usable = battery.acquire();
+            if (this.routes.flow != null) {
+                this.computeFlow(battery, usable);
+            } else if (this.mode == DistributionMode.POOLED) {
+                this.computePooled(battery, usable);
+            } else {
+                this.computeGreedy(battery, usable);
+            }
+        }
+        for (int p = 0; p < this.supplies.length; p++) {
+            this.extracted[p] -= this.supplies[p];
+        }
+        if (this.routes.threadSafe) {
+            this.cost.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Each consumer takes energy from the producers it reaches, then from the storages,
+     * and the energy left in each producer is stored in the storages it reaches.
+     *
+     * @param battery The battery of the network.
+     * @param usable  If the battery can be charged and discharged.
+     */
+    private void computeGreedy(VirtualBattery battery, boolean usable) {
+        double moved = 0;
+        for (int c = 0; c < this.demands.length; c++) {
+            double requiredEnergy = this.demands[c];
+            double providedEnergy = 0;
+
+            for (int p : this.routes.consumerProducers[c]) {
+                if (requiredEnergy <= 0) {
+                    break;
+                }
+                double energyAvailable = Math.min(requiredEnergy, this.supplies[p]);
+                this.supplies[p] -= energyAvailable;
+                requiredEnergy -= energyAvailable;
+                providedEnergy += energyAvailable;
+            }
+
+            for (int g : usable ? this.routes.consumerBatteries[c] : EMPTY) {
+                if (requiredEnergy <= 0) {
+                    break;
+                }
+                double energyFromStorage = Math.min(requiredEnergy, battery.getStored(g));
+                battery.add(g, -energyFromStorage);
+                requiredEnergy -= energyFromStorage;
+                providedEnergy += energyFromStorage;
+            }
+
+            this.received[c] = providedEnergy;
+            this.satisfied[c] = requiredEnergy <= 0;
+            moved += providedEnergy;
+        }
+
+        for (int p = 0; p < this.supplies.length; p++) {
+            double excessEnergy = this.supplies[p];
+            for (int g : usable ? this.routes.producerBatteries[p] : EMPTY) {
+                if (excessEnergy <= 0) {
+                    break;
+                }
+                double energyStored = Math.min(excessEnergy, battery.getAvailable(g));
+                battery.add(g, energyStored);
+                excessEnergy -= energyStored;
+                moved += energyStored;
+            }
+            this.supplies[p] = excessEnergy;
+
+            if (excessEnergy > 0 && this.api.isDebug()) {
+                System.out.println("L'énergie excédentaire du producteur " + this.routes.producers[p].component + " reste dans le producteur.");
+            }
+        }
+        this.movedEnergy = moved;
+    }
+
+    /**
+     * The whole supply is handed out proportionally to the demands,
+     * then the surplus or the deficit is settled with all the storages.
+     * Each producer gives the same share of its supply.
+     *
+     * @param battery The battery of the network.
+     * @param usable  If the battery can be charged and discharged.
+     */
+    private void computePooled(VirtualBattery battery, boolean usable) {
+        double supply = sum(this.supplies);
+        double demand = sum(this.demands);
+        double totalStored = 0;
+        double totalCapacity = 0;
+        for (int g = 0; usable && g < battery.size(); g++) {
+            totalStored += battery.getStored(g);
+            totalCapacity += battery.getAvailable(g);
+        }
+
+        boolean satisfied;
+        double ratio;
+        if (supply >= demand) {
+            satisfied = true;
+            ratio = 1;
+            double surplus = supply - demand;
+            double toStore = Math.min(surplus, totalCapacity);
+            this.movedEnergy = demand + toStore;
+            for (int g = 0; toStore > 0 && g < battery.size(); g++) {
+                battery.add(g, toStore * battery.getAvailable(g) / totalCapacity);
+            }
+            double left = supply > 0 ? (surplus - toStore) / supply : 0;
+            for (int p = 0; p < this.supplies.length; p++) {
+                this.supplies[p] *= left;
+            }
+            if (surplus > toStore && this.api.isDebug()) {
+                System.out.println("L'énergie excédentaire du réseau reste dans les producteurs : " + (surplus - toStore));
+            }
+        } else {
+            Arrays.fill(this.supplies, 0);
+            double drawn = Math.min(demand - supply, totalStored);
+            this.movedEnergy = supply + drawn;
+            for (int g = 0; drawn > 0 && g < battery.size(); g++) {
+                battery.add(g, -drawn * battery.getStored(g) / totalStored);
+            }
+            satisfied = supply + drawn >= demand;
+            ratio = satisfied ? 1 : (supply + drawn) / demand;
+        }
+
+        for (int i = 0; i < this.demands.length; i++) {
+            this.received[i] = this.demands[i] * ratio;
+            this.satisfied[i] = satisfied || this.demands[i] == 0;
+        }
+    }
+
+    /**
+     * The energy is handed out as a maximum flow through the limited transporters, in three passes
+     * run on the flow of the previous update: the producers feed the consumers, then the storages feed them,
+     * then the energy left in the producers is stored. Each pass keeps the energy moved by the previous ones.
+     *
+     * @param battery The battery of the network.
+     * @param usable  If the battery can be charged and discharged.
+     */
+    private void computeFlow(VirtualBattery battery, boolean usable) {
+        FlowGraph flow = this.routes.flow;
+        int groups = battery.size();
+        flow.setElapsedTicks(this.elapsedTicks);
+        for (int p = 0; p < this.supplies.length; p++) {
+            flow.setSupply(p, this.supplies[p]);
+        }
+        for (int c = 0; c < this.demands.length; c++) {
+            flow.setDemand(c, this.demands[c]);
+        }
+        for (int g = 0; g < groups; g++) {
+            flow.setDischarge(g, 0);
+            flow.setCharge(g, 0);
+        }
+        flow.repair();
+        flow.augment();
+
+        if (usable) {
+            for (int g = 0; g < groups; g++) {
+                flow.setDischarge(g, battery.getStored(g));
+            }
+            flow.augment();
+        }
+
+        double moved = 0;
+        for (int c = 0; c < this.demands.length; c++) {
+            double delivered = flow.getDelivered(c);
+            flow.setDemand(c, delivered);
+            this.received[c] = delivered;
+            this.satisfied[c] = delivered >= this.demands[c] * (1 - 1e-9);
+            moved += delivered;
+        }
+
+        if (usable) {
+            for (int g = 0; g < groups; g++) {
+                double discharged = flow.getDischarged(g);
+                flow.setDischarge(g, discharged);
+                battery.add(g, -discharged);
+                flow.setCharge(g, battery.getAvailable(g));
+            }
+            flow.augment();
+            for (int g = 0; g < groups; g++) {
+                double charged = flow.getCharged(g);
+                battery.add(g, charged);
+                moved += Math.max(0, charged - flow.getDischarged(g));
+            }
+        }
+
+        for (int p = 0; p < this.supplies.length; p++) {
+            this.supplies[p] -= flow.getSupplied(p);
+            if (this.supplies[p] > 1e-9 && this.api.isDebug()) {
+                System.out.println("L'énergie excédentaire du producteur " + this.routes.producers[p].component + " reste dans le producteur.");
+            }
+        }
+        this.movedEnergy = moved;
+    }
+
+    /**
+     * Write the computed energy back to the consumers and extract the energy handed out from the producers.
+     *
+     * @return A future completed when every mechanic has been updated.
+     */
+    private CompletableFuture<Void> apply() {
+        NetworkNode[] producers = this.routes.producers;
+        NetworkNode[] consumers = this.routes.consumers;
+        return CompletableFuture.allOf(
+                this.routes.runBatches(this.api, producers, this.routes.producerBatches, (i) -> {
+                    if (this.extracted[i] > 0) {
+                        ((EnergyProducer) producers[i].component.getMechanic()).extractEnergy(this.extracted[i]);
+                    }
+                }, this.cost),
+                this.routes.runBatches(this.api, consumers, this.routes.consumerBatches, (i) -> {
+                    EnergyConsumer consumer = (EnergyConsumer) consumers[i].component.getMechanic();
+                    consumer.receiveEnergy(this.received[i]);
+                    if (!this.satisfied[i] && this.api.isDebug()) {
+                        System.out.println("Le consommateur " + consumers[i].component + " n'a pas reçu assez d'énergie.");
+                    }
+                    consumer.setEnable(this.satisfied[i]);
+                }, this.cost));
+    }
+
+    /**
+     * Sum the values of an array.
+     *
+     * @param values The values.
+     * @return The sum of the values.
+     */
+    private static double sum(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,60 @@
+package fr.traqueur.energylib.api.components;
+
+import java.util.Arrays;
+
+/**
+ * The numbers of the components of a network during an update, in primitive arrays.
+ * Each array is indexed by the dense index of the component in its role array of the {@link NetworkRoutes},
+ * so the transfer computation only runs over contiguous primitive arrays and never calls a mechanic.
+ * The arrays are filled from the mechanics by the snapshot step and written back by the apply step,
+ * the storages are aggregated in the {@link VirtualBattery} of the network instead.
+ */
+final class TickBuffers {
+
+    /**
+     * The excess energy of each producer, then the energy left in it.
+     */
+    final double[] supplies;
+
+    /**
+     * The energy handed out from each producer, extracted from it by the apply step.
+     */
+    final double[] extracted;
+
+    /**
+     * The energy demand of each consumer.
+     */
+    final double[] demands;
+
+    /**
+     * The energy given to each consumer.
+     */
+    final double[] received;
+
+    /**
+     * If each consumer received all the energy it asked for.
+     */
+    final boolean[] satisfied;
+
+    /**
+     * Allocate the buffers of a network.
+     *
+     * @param producers The number of producers.
+     * @param consumers The number of consumers.
+     */
+    TickBuffers(int producers, int consumers) {
+        this.supplies = new double[producers];
+        this.extracted = new double[producers];
+        this.demands = new double[consumers];
+        this.received = new double[consumers];
+        this.satisfied = new boolean[consumers];
+    }
+
+    /**
+     * Clear the results of the previous update, the snapshot overwrites the other arrays.
+     */
+    void reset() {
+        Arrays.fill(this.received, 0);
+        Arrays.fill(this.satisfied, false);
+    }
+}
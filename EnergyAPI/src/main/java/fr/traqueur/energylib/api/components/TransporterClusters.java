@@ -0,0 +1,317 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.mechanics.EnergyTransporter;
+import fr.traqueur.energylib.api.types.MechanicType;
+import fr.traqueur.energylib.api.utils.LongHashMap;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.block.BlockFace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The connected clusters of transporters of a network, each contracted to a single hub.
+ * The traversals of the network step from hub to hub and to the other components attached to them,
+ * instead of visiting every transporter of the long cables.
+ * The clusters are updated when a component is added or removed: adding a transporter merges the clusters around it,
+ * removing one only moves the transporters no longer connected to the cluster, see {@link Connectivity}.
+ * This class is not thread-safe, the network synchronizes the accesses.
+ */
+final class TransporterClusters {
+
+    /**
+     * The cluster of each transporter, by packed block position.
+     */
+    private final LongHashMap<Cluster> byPosition;
+
+    /**
+     * The clusters.
+     */
+    private final List<Cluster> clusters;
+
+    /**
+     * Creates empty clusters.
+     */
+    TransporterClusters() {
+        this.byPosition = new LongHashMap<>();
+        this.clusters = new ArrayList<>();
+    }
+
+    /**
+     * Get the cluster of a transporter.
+     *
+     * @param position The packed position of the transporter.
+     * @return The cluster, or null if there is no transporter at this position.
+     */
+    Cluster get(long position) {
+        return this.byPosition.get(position);
+    }
+
+    /**
+     * Get the clusters.
+     * The returned list must not be modified, the index of each cluster is its position in this list.
+     *
+     * @return The clusters.
+     */
+    List<Cluster> all() {
+        return this.clusters;
+    }
+
+    /**
+     * Add a node, after it has been added to the components.
+     *
+     * @param components The nodes of the network, by packed block position.
+     * @param node       The added node.
+     */
+    void add(LongHashMap<NetworkNode> components, NetworkNode node) {
+        if (!isTransporter(node)) {
+            for (BlockFace face : EnergyNetwork.FACES) {
+                Cluster cluster = this.byPosition.get(Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ()));
+                if (cluster != null) {
+                    cluster.attach(node.position, 1);
+                }
+            }
+            return;
+        }
+
+        Cluster target = null;
+        for (BlockFace face : EnergyNetwork.FACES) {
+            Cluster cluster = this.byPosition.get(Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ()));
+            if (cluster != null && (target == null || cluster.members.size() > target.members.size())) {
+                target = cluster;
+            }
+        }
+        if (target == null) {
+            target = this.create();
+        }
+        for (BlockFace face : EnergyNetwork.FACES) {
+            Cluster cluster = this.byPosition.get(Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ()));
+            if (cluster != null && cluster != target) {
+                this.absorb(target, cluster);
+            }
+        }
+        this.join(components, target, node);
+    }
+
+    /**
+     * Remove a node, after it has been removed from the components.
+     *
+     * @param components The nodes of the network, by packed block position.
+     * @param node       The removed node.
+     */
+    void remove(LongHashMap<NetworkNode> components, NetworkNode node) {
+        if (!isTransporter(node)) {
+            for (BlockFace face : EnergyNetwork.FACES) {
+                Cluster cluster = this.byPosition.get(Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ()));
+                if (cluster != null) {
+                    cluster.attach(node.position, -1);
+                }
+            }
+            return;
+        }
+
+        Cluster cluster = this.byPosition.remove(node.position);
+        if (cluster == null) {
+            return;
+        }
+        cluster.members.remove(node.position);
+        if (!Double.isInfinite(throughput(node))) {
+            cluster.limited--;
+        }
+        if (cluster.members.isEmpty()) {
+            this.discard(cluster);
+            return;
+        }
+
+        List<NetworkNode> starts = new ArrayList<>(EnergyNetwork.FACES.length);
+        for (BlockFace face : EnergyNetwork.FACES) {
+            long neighbor = Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ());
+            NetworkNode member = cluster.members.get(neighbor);
+            if (member != null) {
+                starts.add(member);
+            } else if (components.containsKey(neighbor)) {
+                cluster.attach(neighbor, -1);
+            }
+        }
+        for (List<NetworkNode> part : Connectivity.detachedParts(cluster.members, starts)) {
+            for (NetworkNode member : part) {
+                cluster.members.remove(member.position);
+                if (!Double.isInfinite(throughput(member))) {
+                    cluster.limited--;
+                }
+                for (BlockFace face : EnergyNetwork.FACES) {
+                    NetworkNode neighbor = components.get(Positions.offset(member.position, face.getModX(), face.getModY(), face.getModZ()));
+                    if (neighbor != null && !isTransporter(neighbor)) {
+                        cluster.attach(neighbor.position, -1);
+                    }
+                }
+            }
+            Cluster created = this.create();
+            for (NetworkNode member : part) {
+                this.join(components, created, member);
+            }
+        }
+    }
+
+    /**
+     * Remove a whole part of the network no longer connected to the rest, after it has been removed from the components.
+     * The clusters of the transporters of the part are entirely in the part, so they are dropped without being searched.
+     *
+     * @param nodes The removed nodes.
+     */
+    void removePart(List<NetworkNode> nodes) {
+        for (NetworkNode node : nodes) {
+            Cluster cluster = this.byPosition.get(node.position);
+            if (cluster == null) {
+                continue;
+            }
+            for (long position : cluster.members.keys()) {
+                this.byPosition.remove(position);
+            }
+            this.discard(cluster);
+        }
+    }
+
+    /**
+     * Add a transporter to a cluster and attach the other components around it.
+     *
+     * @param components The nodes of the network, by packed block position.
+     * @param cluster    The cluster.
+     * @param node       The transporter.
+     */
+    private void join(LongHashMap<NetworkNode> components, Cluster cluster, NetworkNode node) {
+        cluster.members.put(node.position, node);
+        this.byPosition.put(node.position, cluster);
+        if (!Double.isInfinite(throughput(node))) {
+            cluster.limited++;
+        }
+        for (BlockFace face : EnergyNetwork.FACES) {
+            NetworkNode neighbor = components.get(Positions.offset(node.position, face.getModX(), face.getModY(), face.getModZ()));
+            if (neighbor != null && !isTransporter(neighbor)) {
+                cluster.attach(neighbor.position, 1);
+            }
+        }
+    }
+
+    /**
+     * Move the transporters and the attachments of a cluster to another one.
+     *
+     * @param target  The cluster receiving the transporters.
+     * @param cluster The cluster to empty.
+     */
+    private void absorb(Cluster target, Cluster cluster) {
+        long[] positions = cluster.members.keys();
+        Object[] members = cluster.members.values();
+        for (int i = 0; i < positions.length; i++) {
+            target.members.put(positions[i], (NetworkNode) members[i]);
+            this.byPosition.put(positions[i], target);
+        }
+        long[] attached = cluster.attachments.keys();
+        Object[] links = cluster.attachments.values();
+        for (int i = 0; i < attached.length; i++) {
+            target.attach(attached[i], (Integer) links[i]);
+        }
+        target.limited += cluster.limited;
+        this.discard(cluster);
+    }
+
+    /**
+     * Create an empty cluster.
+     *
+     * @return The new cluster.
+     */
+    private Cluster create() {
+        Cluster cluster = new Cluster(this.clusters.size());
+        this.clusters.add(cluster);
+        return cluster;
+    }
+
+    /**
+     * Remove a cluster from the list, the last cluster takes its index.
+     *
+     * @param cluster The cluster to remove.
+     */
+    private void discard(Cluster cluster) {
+        Cluster last = this.clusters.remove(this.clusters.size() - 1);
+        if (last != cluster) {
+            this.clusters.set(cluster.index, last);
+            last.index = cluster.index;
+        }
+    }
+
+    /**
+     * Get if a node is a transporter.
+     *
+     * @param node The node.
+     * @return If the mechanic of the node is a transporter.
+     */
+    static boolean isTransporter(NetworkNode node) {
+        return MechanicType.TRANSPORTER.isInstance(node.component);
+    }
+
+    /**
+     * Get the throughput of a node.
+     *
+     * @param node The node.
+     * @return The throughput per tick of the transporter, infinite for the other components.
+     */
+    static double throughput(NetworkNode node) {
+        if (node.component.getMechanic() instanceof EnergyTransporter transporter) {
+            return Math.max(0, transporter.getMaxThroughput());
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * A connected cluster of transporters.
+     */
+    static final class Cluster {
+
+        /**
+         * The transporters of the cluster, by packed block position.
+         */
+        final LongHashMap<NetworkNode> members;
+
+        /**
+         * The number of faces linking each other component to the cluster, by packed block position.
+         */
+        final LongHashMap<Integer> attachments;
+
+        /**
+         * The number of transporters of the cluster with a limited throughput.
+         */
+        int limited;
+
+        /**
+         * The index of the cluster in the list of the clusters.
+         */
+        int index;
+
+        /**
+         * Creates an empty cluster.
+         *
+         * @param index The index of the cluster in the list of the clusters.
+         */
+        private Cluster(int index) {
+            this.members = new LongHashMap<>();
+            this.attachments = new LongHashMap<>();
+            this.index = index;
+        }
+
+        /**
+         * Add or remove links between a component and the cluster.
+         *
+         * @param position The packed position of the component.
+         * @param links    The number of faces to add, negative to remove them.
+         */
+        private void attach(long position, int links) {
+            Integer current = this.attachments.get(position);
+            int count = (current == null ? 0 : current) + links;
+            if (count > 0) {
+                this.attachments.put(position, count);
+            } else {
+                this.attachments.remove(position);
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.mechanics.EnergyStorage;
+import fr.traqueur.energylib.api.utils.LongHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The storages of a network, aggregated by connected group into single batteries.
+ * The updates charge and discharge a whole group in constant time, the energy is only spread back
+ * to the storages when the network is saved or inspected, or when its topology changes.
+ * The energy of each storage is kept by the battery, indexed like the storages, and carried over
+ * to the battery computed after a topology change.
+ * The storages are read again when the network is woken, as their mechanics may have been modified
+ * by something else than the network: the energy the network moved since the last flush is kept on top of it.
+ * The accesses are synchronized on the battery.
+ */
+final class VirtualBattery {
+
+    /**
+     * The storages of the network.
+     */
+    private final NetworkNode[] storages;
+
+    /**
+     * The indexes of the storages of each group.
+     */
+    private final int[][] groups;
+
+    /**
+     * The energy stored in each group.
+     */
+    private final double[] stored;
+
+    /**
+     * The maximum capacity of each group.
+     */
+    private final double[] capacities;
+
+    /**
+     * The energy of each storage as seen by the network, or NaN until it is read from the mechanic.
+     */
+    private final double[] storageStored;
+
+    /**
+     * The energy of each storage as last read from or written to the mechanic.
+     */
+    private final double[] storageFlushed;
+
+    /**
+     * The maximum capacity of each storage.
+     */
+    private final double[] storageCapacities;
+
+    /**
+     * If each storage must be read again from its mechanic, as it may have changed since it was last read.
+     */
+    private final boolean[] storageStale;
+
+    /**
+     * If the totals of the groups have been computed from the storages.
+     */
+    private boolean loaded;
+
+    /**
+     * If the topology of the network changed, the battery is then no longer charged nor discharged.
+     */
+    private boolean retired;
+
+    /**
+     * Creates the battery of a network, with the energy of the storages kept by the retired batteries.
+     *
+     * @param storages The storages of the network.
+     * @param groups   The indexes of the storages of each group.
+     * @param retired  The batteries retired since the previous one was created, the storages still in the network
+     *                 keep the energy they had in them.
+     */
+    VirtualBattery(NetworkNode[] storages, int[][] groups, List<VirtualBattery> retired) {
+        this.storages = storages;
+        this.groups = groups;
+        this.stored = new double[groups.length];
+        this.capacities = new double[groups.length];
+        this.storageStored = new double[storages.length];
+        this.storageFlushed = new double[storages.length];
+        this.storageCapacities = new double[storages.length];
+        this.storageStale = new boolean[storages.length];
+        Arrays.fill(this.storageStored, Double.NaN);
+        if (!retired.isEmpty() && storages.length > 0) {
+            this.inherit(retired);
+        }
+    }
+
+    /**
+     * Take the energy of the storages kept by the retired batteries.
+     * A storage is matched by its position and its component, so a storage replaced in between starts empty.
+     *
+     * @param retired The retired batteries.
+     */
+    private void inherit(List<VirtualBattery> retired) {
+        LongHashMap<Integer> indexes = new LongHashMap<>(this.storages.length);
+        for (int i = 0; i < this.storages.length; i++) {
+            indexes.put(this.storages[i].position, i);
+        }
+        for (VirtualBattery battery : retired) {
+            synchronized (battery) {
+                for (int i = 0; i < battery.storages.length; i++) {
+                    Integer index = indexes.get(battery.storages[i].position);
+                    if (index == null || Double.isNaN(battery.storageStored[i])
+                            || this.storages[index].component != battery.storages[i].component
+                            || !Double.isNaN(this.storageStored[index])) {
+                        continue;
+                    }
+                    this.storageStored[index] = battery.storageStored[i];
+                    this.storageFlushed[index] = battery.storageFlushed[i];
+                    this.storageCapacities[index] = battery.storageCapacities[i];
+                    this.storageStale[index] = battery.storageStale[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Get if some storages have never been read from their mechanic, or must be read again.
+     *
+     * @return If the storages must be read before the battery is used.
+     */
+    synchronized boolean needsRead() {
+        for (int i = 0; i < this.storageStored.length; i++) {
+            if (this.storageStale[i] || Double.isNaN(this.storageStored[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mark all the storages to be read again from their mechanic by the next update.
+     * The energy of the groups is spread back to the storages first, the totals are computed again once they are read.
+     */
+    synchronized void markStale() {
+        if (this.retired) {
+            return;
+        }
+        this.spread();
+        Arrays.fill(this.storageStale, true);
+        this.loaded = false;
+    }
+
+    /**
+     * Read a storage from its mechanic, if it has never been read or must be read again.
+     * When it is read again, the energy the network moved to or from the storage since it was last flushed
+     * is kept on top of the energy of the mechanic.
+     * This method must be called on the thread owning the storage, before the battery is acquired.
+     *
+     * @param index The index of the storage.
+     */
+    void read(int index) {
+        synchronized (this) {
+            if (!this.storageStale[index] && !Double.isNaN(this.storageStored[index])) {
+                return;
+            }
+        }
+        EnergyStorage mechanic = (EnergyStorage) this.storages[index].component.getMechanic();
+        double capacity = Math.max(0, mechanic.getMaximumCapacity());
+        double energy = Math.max(0, mechanic.getStoredEnergy());
+        synchronized (this) {
+            if (this.loaded) {
+                this.spread();
+                this.loaded = false;
+            }
+            double stored = this.storageStored[index];
+            double pending = Double.isNaN(stored) ? 0 : stored - this.storageFlushed[index];
+            this.storageCapacities[index] = capacity;
+            this.storageFlushed[index] = energy;
+            this.storageStored[index] = Math.min(capacity, Math.max(0, energy + pending));
+            this.storageStale[index] = false;
+        }
+    }
+
+    /**
+     * Get if the battery can be charged and discharged, computing the totals of the groups the first time.
+     *
+     * @return If the battery is usable, false once the topology of the network changed.
+     */
+    synchronized boolean acquire() {
+        if (this.retired) {
+            return false;
+        }
+        if (!this.loaded) {
+            Arrays.fill(this.stored, 0);
+            Arrays.fill(this.capacities, 0);
+            for (int group = 0; group < this.groups.length; group++) {
+                for (int index : this.groups[group]) {
+                    double energy = this.storageStored[index];
+                    this.stored[group] += Double.isNaN(energy) ? 0 : energy;
+                    this.capacities[group] += this.storageCapacities[index];
+                }
+            }
+            this.loaded = true;
+        }
+        return true;
+    }
+
+    /**
+     * Get the energy stored in a group.
+     *
+     * @param group The group.
+     * @return The stored energy.
+     */
+    double getStored(int group) {
+        return this.stored[group];
+    }
+
+    /**
+     * Get the energy a group can still store.
+     *
+     * @param group The group.
+     * @return The available capacity.
+     */
+    double getAvailable(int group) {
+        return Math.max(0, this.capacities[group] - this.stored[group]);
+    }
+
+    /**
+     * Store energy in a group, or take it if the amount is negative.
+     *
+     * @param group  The group.
+     * @param energy The energy to add.
+     */
+    void add(int group, double energy) {
+        this.stored[group] = Math.min(this.capacities[group], Math.max(0, this.stored[group] + energy));
+    }
+
+    /**
+     * Get the number of groups.
+     *
+     * @return The number of groups.
+     */
+    int size() {
+        return this.groups.length;
+    }
+
+    /**
+     * Spread the energy of each group back to its storages, proportionally to their capacity.
+     * The mechanics are not modified, see {@link #flush(int)}.
+     */
+    synchronized void spread() {
+        if (!this.loaded || this.retired) {
+            return;
+        }
+        for (int group = 0; group < this.groups.length; group++) {
+            double capacity = this.capacities[group];
+            for (int index : this.groups[group]) {
+                this.storageStored[index] = capacity > 0 ? this.stored[group] * this.storageCapacities[index] / capacity : 0;
+            }
+        }
+    }
+
+    /**
+     * Spread the energy back to the storages for the last time, the battery is no longer used
+     * and its storages are carried over to the next battery of the network.
+     */
+    synchronized void retire() {
+        this.spread();
+        this.retired = true;
+    }
+
+    /**
+     * Get the energy stored in all the groups.
+     *
+     * @return The total stored energy.
+     */
+    synchronized double getTotalStored() {
+        if (!this.loaded) {
+            double total = 0;
+            for (double energy : this.storageStored) {
+                total += Double.isNaN(energy) ? 0 : energy;
+            }
+            return total;
+        }
+        double total = 0;
+        for (double energy : this.stored) {
+            total += energy;
+        }
+        return total;
+    }
+
+    /**
+     * Get the maximum capacity of all the storages read so far.
+     *
+     * @return The total capacity.
+     */
+    synchronized double getTotalCapacity() {
+        double total = 0;
+        for (double capacity : this.storageCapacities) {
+            total += capacity;
+        }
+        return total;
+    }
+
+    /**
+     * Get the index of a storage of the battery.
+     *
+     * @param storage The storage.
+     * @return The index of the storage, or -1 if it is not a storage of the battery.
+     */
+    int indexOf(NetworkNode storage) {
+        if (storage.slot >= 0 && storage.slot < this.storages.length && this.storages[storage.slot] == storage) {
+            return storage.slot;
+        }
+        for (int i = 0; i < this.storages.length; i++) {
+            if (this.storages[i] == storage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the energy of a storage, as seen by the network, to its mechanic.
+     * The energy must have been spread before, this method must be called on a thread allowed to modify the storage.
+     * Nothing is written once the battery is retired, the next battery carries the energy over.
+     *
+     * @param index The index of the storage.
+     */
+    synchronized void flush(int index) {
+        if (this.retired || index < 0 || Double.isNaN(this.storageStored[index])) {
+            return;
+        }
+        double delta = this.storageStored[index] - this.storageFlushed[index];
+        EnergyStorage mechanic = (EnergyStorage) this.storages[index].component.getMechanic();
+        if (delta > 0) {
+            mechanic.storeEnergy(delta);
+        } else if (delta < 0) {
+            mechanic.consumeEnergy(-delta);
+        }
+        this.storageFlushed[index] = this.storageStored[index];
+    }
+}
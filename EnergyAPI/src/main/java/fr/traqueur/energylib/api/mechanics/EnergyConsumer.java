@@ -26,6 +26,20 @@ public interface EnergyConsumer  extends EnergyMechanic {
      */
     double getEnergyDemand();
 
+    /**
+     * This method is used to get the energy demand of the energy consumer for several ticks.
+     * The network calls this method when it is updated less often than every tick.
+     * By default the demand is not scaled, the consumer asks for the demand of a single tick on each update,
+     * like the producers produce once per update by default, see {@link EnergyProducer#produce(org.bukkit.Location, int)}.
+     * Consumers using a fixed amount of energy per tick can override this method to scale their demand,
+     * the producers of their networks should then scale their production too.
+     * @param elapsedTicks the number of ticks since the last update of the network.
+     * @return the energy demand of the energy consumer for the elapsed ticks.
+     */
+    default double getEnergyDemand(int elapsedTicks) {
+        return this.getEnergyDemand();
+    }
+
     /**
      * This method is used to receive energy.
      * @param energyToGive the amount of energy to give to the energy consumer.
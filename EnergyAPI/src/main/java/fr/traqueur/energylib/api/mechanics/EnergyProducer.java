@@ -32,8 +32,24 @@ public interface EnergyProducer extends EnergyMechanic {
      */
     void produce(Location location);
 
+    /**
+     * Produce the energy of several ticks at the given location.
+     * The network calls this method when it is updated less often than every tick.
+     * By default the production is not scaled, the producer produces once per update, like the consumers ask for
+     * the demand of a single tick by default, see {@link EnergyConsumer#getEnergyDemand(int)}.
+     * Producers producing a fixed amount of energy per tick can override this method to scale their production,
+     * the consumers of their networks should then scale their demand too.
+     * @param location the location to produce energy at
+     * @param elapsedTicks the number of ticks since the last update of the network
+     */
+    default void produce(Location location, int elapsedTicks) {
+        this.produce(location);
+    }
+
     /**
      * Extract energy from this energy producer.
+     * The network calls this method once per update with the energy it handed out to the consumers and the storages,
+     * which is at most the excess energy read before, see {@link #getExcessEnergy()}.
      * @param v the amount of energy to extract
      * @return the amount of energy that was actually extracted
      */
@@ -41,6 +57,9 @@ public interface EnergyProducer extends EnergyMechanic {
 
     /**
      * Get the amount of excess energy that is currently stored in this energy producer.
+     * The network reads this amount once per update, right after {@link #produce(Location, int)}, as the energy
+     * it can hand out: reading it must not remove the energy, the network extracts what it hands out
+     * through {@link #extractEnergy(double)} and the rest stays in the producer.
      * @return the amount of excess energy that is currently stored in this energy producer
      */
     double getExcessEnergy();
@@ -4,4 +4,15 @@ package fr.traqueur.energylib.api.mechanics;
  * This interface is used to represent an energy transporter.
  */
 public interface EnergyTransporter extends EnergyMechanic {
+
+    /**
+     * This method is used to get the maximum energy the energy transporter can carry per tick.
+     * A network holding a transporter with a limited throughput hands out its energy as a maximum flow
+     * through its transporters, whatever its distribution mode.
+     * The network reads this value when its components change, so it must not change over time.
+     * @return the maximum throughput of the energy transporter, infinite by default.
+     */
+    default double getMaxThroughput() {
+        return Double.POSITIVE_INFINITY;
+    }
 }
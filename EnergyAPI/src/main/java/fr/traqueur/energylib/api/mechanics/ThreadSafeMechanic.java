@@ -0,0 +1,8 @@
+package fr.traqueur.energylib.api.mechanics;
+
+/**
+ * This interface is used to mark an EnergyMechanic as thread-safe and independent of the world.
+ * Such a mechanic never reads nor modifies the world and can be called from any thread,
+ * so the networks made only of such mechanics are updated in parallel without being scheduled on the region threads.
+ */
+public interface ThreadSafeMechanic extends EnergyMechanic { }
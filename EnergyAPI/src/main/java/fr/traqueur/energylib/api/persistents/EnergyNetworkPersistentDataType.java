@@ -0,0 +1,536 @@
+package fr.traqueur.energylib.api.persistents;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import fr.traqueur.energylib.api.EnergyAPI;
+import fr.traqueur.energylib.api.components.EnergyComponent;
+import fr.traqueur.energylib.api.components.EnergyNetwork;
+import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
+import fr.traqueur.energylib.api.mechanics.EnergyMechanic;
+import fr.traqueur.energylib.api.mechanics.ThreadSafeMechanic;
+import fr.traqueur.energylib.api.types.DistributionMode;
+import fr.traqueur.energylib.api.types.EnergyType;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.persistence.PersistentDataAdapterContext;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class is used to save the EnergyNetworks in a chunk, in a compact binary format.
+ * The block positions are delta-encoded from the origin of the chunk of the network as variable-length integers,
+ * the names of the energy types and of the mechanic classes are written once and referenced by index,
+ * and the mechanics are written as raw UTF-8 JSON.
+ * The format starts with a version byte and the identifier of the network, see {@link #readId(byte[])},
+ * the rest is compressed.
+ * A network can be encoded in two steps, see {@link #snapshot(EnergyNetwork)} and {@link #encode(Snapshot)}.
+ */
+public class EnergyNetworkPersistentDataType implements PersistentDataType<byte[], EnergyNetwork> {
+
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The first version of the format, still read, its content is not compressed.
+     */
+    private static final int UNCOMPRESSED_VERSION = 1;
+
+    /**
+     * The flag set when the network has a world.
+     */
+    private static final int HAS_WORLD = 1;
+
+    /**
+     * The flag set when the network overrides its distribution mode.
+     */
+    private static final int HAS_MODE = 1 << 1;
+
+    /**
+     * The flag set when the network overrides its update interval.
+     */
+    private static final int HAS_INTERVAL = 1 << 2;
+
+    /**
+     * The EnergyAPI instance.
+     */
+    private final EnergyAPI api;
+
+    /**
+     * The Gson instance used to serialize and deserialize the mechanics.
+     */
+    private final Gson gson;
+
+    /**
+     * Creates a new EnergyNetworkPersistentDataType.
+     *
+     * @param api  The EnergyAPI instance.
+     * @param gson The Gson instance used to serialize and deserialize the mechanics.
+     */
+    public EnergyNetworkPersistentDataType(EnergyAPI api, Gson gson) {
+        this.api = api;
+        this.gson = gson;
+    }
+
+    /**
+     * Get the primitive type of the class
+     * @return the primitive type
+     */
+    @Override
+    public Class<byte[]> getPrimitiveType() {
+        return byte[].class;
+    }
+
+    /**
+     * Get the complex type of the class
+     * @return the complex type
+     */
+    @Override
+    public Class<EnergyNetwork> getComplexType() {
+        return EnergyNetwork.class;
+    }
+
+    /**
+     * Convert the EnergyNetwork to a primitive type
+     * @param network the EnergyNetwork
+     * @param context the context
+     * @return the primitive type
+     */
+    @Override
+    public byte[] toPrimitive(EnergyNetwork network, PersistentDataAdapterContext context) {
+        return this.encode(network);
+    }
+
+    /**
+     * Convert the primitive type to a EnergyNetwork
+     * @param data the primitive type
+     * @param context the context
+     * @return the EnergyNetwork
+     */
+    @Override
+    public EnergyNetwork fromPrimitive(byte[] data, PersistentDataAdapterContext context) {
+        return this.decode(data);
+    }
+
+    /**
+     * Encode a network on the current thread.
+     *
+     * @param network The network.
+     * @return The encoded network.
+     */
+    public byte[] encode(EnergyNetwork network) {
+        return this.encode(this.snapshot(network));
+    }
+
+    /**
+     * Take a snapshot of a network, to encode it later on any thread.
+     * This method must be called on the thread owning the mechanics of the network:
+     * the mechanics are copied field by field, see {@link MechanicCopier}, and serialized to JSON when encoded.
+     * The {@link ThreadSafeMechanic}s are not copied, and the mechanics that cannot be copied are converted to JSON trees right away.
+     *
+     * @param network The network.
+     * @return The snapshot of the network.
+     */
+    public Snapshot snapshot(EnergyNetwork network) {
+        List<Long> positions = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<String> classes = new ArrayList<>();
+        List<Object> mechanics = new ArrayList<>();
+        network.forEachComponent((position, component) -> {
+            EnergyMechanic mechanic = component.getMechanic();
+            positions.add(position);
+            types.add(component.getEnergyType().getName());
+            classes.add(mechanic.getClass().getName());
+            Object state = mechanic instanceof ThreadSafeMechanic ? mechanic : MechanicCopier.copy(mechanic);
+            mechanics.add(state != null ? state : this.gson.toJsonTree(mechanic, mechanic.getClass()));
+        });
+        World world = network.getWorld();
+        return new Snapshot(network.getId(), world == null ? null : world.getUID(), network.getDistributionModeOverride().orElse(null),
+                network.getUpdateIntervalOverride().orElse(0), network.getChunkKey(),
+                positions.stream().mapToLong(Long::longValue).toArray(), types.toArray(new String[0]), classes.toArray(new String[0]), mechanics.toArray());
+    }
+
+    /**
+     * Encode the snapshot of a network, this method can be called on any thread.
+     * The chunk of the network is written before the components, so the decoded network keeps its chunk
+     * even when none of its components is left in it.
+     * Everything but the version and the identifier of the network is compressed.
+     *
+     * @param snapshot The snapshot of the network.
+     * @return The encoded network.
+     */
+    public byte[] encode(Snapshot snapshot) {
+        long[] positions = snapshot.positions;
+        Integer[] order = new Integer[positions.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(positions[a], positions[b]));
+
+        Map<String, Integer> names = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        int[] types = new int[order.length];
+        int[] classes = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            types[i] = names.computeIfAbsent(snapshot.types[order[i]], (name) -> this.intern(table, name));
+            classes[i] = names.computeIfAbsent(snapshot.classes[order[i]], (name) -> this.intern(table, name));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + order.length * 8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream header = new DataOutputStream(bytes);
+             DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            header.writeByte(VERSION);
+            header.writeLong(snapshot.id.getMostSignificantBits());
+            header.writeLong(snapshot.id.getLeastSignificantBits());
+            header.flush();
+
+            int flags = (snapshot.world != null ? HAS_WORLD : 0)
+                    | (snapshot.mode != null ? HAS_MODE : 0)
+                    | (snapshot.interval > 0 ? HAS_INTERVAL : 0);
+            out.writeByte(flags);
+            if (snapshot.world != null) {
+                out.writeLong(snapshot.world.getMostSignificantBits());
+                out.writeLong(snapshot.world.getLeastSignificantBits());
+            }
+            if (snapshot.mode != null) {
+                writeString(out, snapshot.mode.name());
+            }
+            if (snapshot.interval > 0) {
+                writeVarInt(out, snapshot.interval);
+            }
+
+            writeVarInt(out, table.size());
+            for (String name : table) {
+                writeString(out, name);
+            }
+
+            int chunkX = Positions.chunkX(snapshot.chunkKey);
+            int chunkZ = Positions.chunkZ(snapshot.chunkKey);
+            writeVarInt(out, zigzag(chunkX));
+            writeVarInt(out, zigzag(chunkZ));
+            writeVarInt(out, order.length);
+            int x = chunkX << 4;
+            int y = 0;
+            int z = chunkZ << 4;
+            for (int i = 0; i < order.length; i++) {
+                long position = positions[order[i]];
+                writeVarInt(out, zigzag(Positions.x(position) - x));
+                writeVarInt(out, zigzag(Positions.y(position) - y));
+                writeVarInt(out, zigzag(Positions.z(position) - z));
+                x = Positions.x(position);
+                y = Positions.y(position);
+                z = Positions.z(position);
+
+                writeVarInt(out, types[i]);
+                writeVarInt(out, classes[i]);
+                Object mechanic = snapshot.mechanics[order[i]];
+                String json = mechanic instanceof JsonElement element ? this.gson.toJson(element) : this.gson.toJson(mechanic, mechanic.getClass());
+                writeString(out, json);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode the network " + snapshot.id, e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a network.
+     *
+     * @param data The encoded network.
+     * @return The network.
+     */
+    public EnergyNetwork decode(byte[] data) {
+        UUID id = readId(data);
+        InputStream body = new ByteArrayInputStream(data, 17, data.length - 17);
+        try (DataInputStream in = new DataInputStream(data[0] == VERSION ? new InflaterInputStream(body) : body)) {
+            int flags = in.readUnsignedByte();
+            World world = null;
+            if ((flags & HAS_WORLD) != 0) {
+                world = Bukkit.getServer().getWorld(new UUID(in.readLong(), in.readLong()));
+            }
+            DistributionMode mode = (flags & HAS_MODE) != 0 ? DistributionMode.valueOf(readString(in)) : null;
+            int interval = (flags & HAS_INTERVAL) != 0 ? readVarInt(in) : 0;
+
+            String[] table = new String[readVarInt(in)];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = readString(in);
+            }
+            EnergyType[] types = new EnergyType[table.length];
+            Class<?>[] classes = new Class<?>[table.length];
+
+            int chunkX = unzigzag(readVarInt(in));
+            int chunkZ = unzigzag(readVarInt(in));
+            EnergyNetwork network = new EnergyNetwork(this.api, id, world, Positions.chunkKey(chunkX, chunkZ));
+            network.setDistributionMode(mode);
+            network.setUpdateInterval(interval);
+
+            int x = chunkX << 4;
+            int y = 0;
+            int z = chunkZ << 4;
+            int count = readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                x += unzigzag(readVarInt(in));
+                y += unzigzag(readVarInt(in));
+                z += unzigzag(readVarInt(in));
+
+                int type = readVarInt(in);
+                if (types[type] == null) {
+                    types[type] = this.toEnergyType(table[type]);
+                }
+                int clazz = readVarInt(in);
+                if (classes[clazz] == null) {
+                    classes[clazz] = this.toMechanicClass(table[clazz]);
+                }
+                EnergyMechanic energyMechanic = (EnergyMechanic) this.gson.fromJson(readString(in), classes[clazz]);
+                network.addComponent(new EnergyComponent<>(types[type], energyMechanic), new Location(world, x, y, z));
+            }
+            return network;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed network data!", e);
+        } catch (SameEnergyTypeException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Read the identifier of an encoded network, without decoding the network.
+     *
+     * @param data The encoded network.
+     * @return The identifier of the network.
+     */
+    public static UUID readId(byte[] data) {
+        if (data.length < 17 || (data[0] != VERSION && data[0] != UNCOMPRESSED_VERSION)) {
+            throw new IllegalArgumentException("Unknown network format!");
+        }
+        long most = 0;
+        long least = 0;
+        for (int i = 1; i < 9; i++) {
+            most = (most << 8) | (data[i] & 0xFF);
+            least = (least << 8) | (data[i + 8] & 0xFF);
+        }
+        return new UUID(most, least);
+    }
+
+    /**
+     * Add a name to the table of the names.
+     *
+     * @param table The table of the names.
+     * @param name  The name.
+     * @return The index of the name in the table.
+     */
+    private int intern(List<String> table, String name) {
+        table.add(name);
+        return table.size() - 1;
+    }
+
+    /**
+     * Get an energy type from its name.
+     *
+     * @param name The name of the energy type.
+     * @return The energy type.
+     */
+    private EnergyType toEnergyType(String name) {
+        return EnergyType.TYPES.stream()
+                .filter(type -> type.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("EnergyType " + name + " not found!"));
+    }
+
+    /**
+     * Get a mechanic class from its name.
+     *
+     * @param name The name of the mechanic class.
+     * @return The mechanic class.
+     */
+    private Class<? extends EnergyMechanic> toMechanicClass(String name) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Class " + name + " not found!");
+        }
+        if (!EnergyMechanic.class.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException("Class " + name + " is not an EnergyMechanic!");
+        }
+        return clazz.asSubclass(EnergyMechanic.class);
+    }
+
+    /**
+     * Map a signed integer to an unsigned one, so small negative values stay small.
+     *
+     * @param value The signed value.
+     * @return The unsigned value.
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Map back an unsigned integer to the signed one, see {@link #zigzag(int)}.
+     *
+     * @param value The unsigned value.
+     * @return The signed value.
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Write an unsigned integer on 1 to 5 bytes, 7 bits per byte.
+     *
+     * @param out   The output.
+     * @param value The value.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Read an unsigned integer written by {@link #writeVarInt(DataOutputStream, int)}.
+     *
+     * @param in The input.
+     * @return The value.
+     * @throws IOException If an I/O error occurs or the integer is too long.
+     */
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt too long.");
+    }
+
+    /**
+     * Write a string as its UTF-8 length and bytes.
+     *
+     * @param out    The output.
+     * @param string The string.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in The input.
+     * @return The string.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The state of a network captured to be encoded later, on any thread.
+     */
+    public static final class Snapshot {
+
+        /**
+         * The network's unique identifier.
+         */
+        private final UUID id;
+
+        /**
+         * The unique identifier of the network's world, or null if it has no world.
+         */
+        private final UUID world;
+
+        /**
+         * The distribution mode set on the network, or null.
+         */
+        private final DistributionMode mode;
+
+        /**
+         * The update interval set on the network, or 0.
+         */
+        private final int interval;
+
+        /**
+         * The packed key of the network's chunk.
+         */
+        private final long chunkKey;
+
+        /**
+         * The packed block position of each component.
+         */
+        private final long[] positions;
+
+        /**
+         * The name of the energy type of each component.
+         */
+        private final String[] types;
+
+        /**
+         * The name of the mechanic class of each component.
+         */
+        private final String[] classes;
+
+        /**
+         * The mechanic of each component, as a copy, as the {@link ThreadSafeMechanic} itself, or as a JSON tree.
+         */
+        private final Object[] mechanics;
+
+        /**
+         * Creates a snapshot of a network.
+         *
+         * @param id        The network's unique identifier.
+         * @param world     The unique identifier of the network's world, or null.
+         * @param mode      The distribution mode set on the network, or null.
+         * @param interval  The update interval set on the network, or 0.
+         * @param chunkKey  The packed key of the network's chunk.
+         * @param positions The packed block position of each component.
+         * @param types     The name of the energy type of each component.
+         * @param classes   The name of the mechanic class of each component.
+         * @param mechanics The mechanic of each component.
+         */
+        private Snapshot(UUID id, UUID world, DistributionMode mode, int interval, long chunkKey,
+                         long[] positions, String[] types, String[] classes, Object[] mechanics) {
+            this.id = id;
+            this.world = world;
+            this.mode = mode;
+            this.interval = interval;
+            this.chunkKey = chunkKey;
+            this.positions = positions;
+            this.types = types;
+            this.classes = classes;
+            this.mechanics = mechanics;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package fr.traqueur.energylib.api.persistents;
+
+import fr.traqueur.energylib.api.mechanics.EnergyMechanic;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copies the mechanics field by field, so their state can be serialized later on any thread.
+ * Only the mechanics whose class has a no-argument constructor and whose serialized fields,
+ * the ones neither static nor transient, hold primitives, boxed primitives, strings or enums are copied:
+ * such a copy shares nothing mutable with the mechanic.
+ */
+final class MechanicCopier {
+
+    /**
+     * The immutable types a copied field may hold, besides the primitives and the enums.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = Set.of(String.class, Boolean.class, Character.class,
+            Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class);
+
+    /**
+     * The copier of each mechanic class, or null if the class cannot be copied.
+     */
+    private static final ClassValue<MechanicCopier> COPIERS = new ClassValue<>() {
+        @Override
+        protected MechanicCopier computeValue(Class<?> type) {
+            return MechanicCopier.create(type);
+        }
+    };
+
+    /**
+     * The no-argument constructor of the mechanic class.
+     */
+    private final Constructor<?> constructor;
+
+    /**
+     * The serialized fields of the mechanic class and of its superclasses.
+     */
+    private final Field[] fields;
+
+    /**
+     * Creates a copier.
+     *
+     * @param constructor The no-argument constructor of the mechanic class.
+     * @param fields      The serialized fields of the mechanic class and of its superclasses.
+     */
+    private MechanicCopier(Constructor<?> constructor, Field[] fields) {
+        this.constructor = constructor;
+        this.fields = fields;
+    }
+
+    /**
+     * Copy a mechanic.
+     * This method must be called on the thread owning the mechanic.
+     *
+     * @param mechanic The mechanic.
+     * @return The copy of the mechanic, or null if its class cannot be copied.
+     */
+    static EnergyMechanic copy(EnergyMechanic mechanic) {
+        MechanicCopier copier = COPIERS.get(mechanic.getClass());
+        if (copier == null) {
+            return null;
+        }
+        try {
+            Object copy = copier.constructor.newInstance();
+            for (Field field : copier.fields) {
+                field.set(copy, field.get(mechanic));
+            }
+            return (EnergyMechanic) copy;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create the copier of a mechanic class.
+     *
+     * @param type The mechanic class.
+     * @return The copier, or null if the class cannot be copied.
+     */
+    private static MechanicCopier create(Class<?> type) {
+        if (type.isRecord() || type.isAnonymousClass() || type.isLocalClass()
+                || (type.isMemberClass() && !Modifier.isStatic(type.getModifiers()))) {
+            return null;
+        }
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    Class<?> fieldType = field.getType();
+                    if (!fieldType.isPrimitive() && !fieldType.isEnum() && !IMMUTABLE_TYPES.contains(fieldType)) {
+                        return null;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return new MechanicCopier(constructor, fields.toArray(new Field[0]));
+        } catch (NoSuchMethodException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -15,6 +15,7 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import com.google.gson.JsonSyntaxException;
 import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
+import fr.traqueur.energylib.api.types.DistributionMode;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 
@@ -69,6 +70,14 @@ public class EnergyNetworkAdapter extends TypeAdapter<EnergyNetwork> {
         out.endObject();
         out.name("id");
         out.value(value.getId().toString());
+        if (value.getDistributionModeOverride().isPresent()) {
+            out.name("mode");
+            out.value(value.getDistributionModeOverride().get().name());
+        }
+        if (value.getUpdateIntervalOverride().isPresent()) {
+            out.name("interval");
+            out.value(value.getUpdateIntervalOverride().getAsInt());
+        }
         out.endObject();
     }
 
@@ -83,6 +92,8 @@ public class EnergyNetworkAdapter extends TypeAdapter<EnergyNetwork> {
     public EnergyNetwork read(JsonReader in) throws IOException {
         Map<Location, EnergyComponent<?>> components = new ConcurrentHashMap<>();
         String id = null;
+        DistributionMode mode = null;
+        int interval = 0;
         in.beginObject();
         while (in.hasNext()) {
             String name = in.nextName();
@@ -96,6 +107,10 @@ public class EnergyNetworkAdapter extends TypeAdapter<EnergyNetwork> {
                 in.endObject();
             } else if(name.equalsIgnoreCase("id")) {
                 id = in.nextString();
+            } else if(name.equalsIgnoreCase("mode")) {
+                mode = DistributionMode.valueOf(in.nextString());
+            } else if(name.equalsIgnoreCase("interval")) {
+                interval = in.nextInt();
             } else {
                 throw new JsonSyntaxException("Unknown field in EnergyNetwork: " + name);
             }
@@ -103,6 +118,8 @@ public class EnergyNetworkAdapter extends TypeAdapter<EnergyNetwork> {
         in.endObject();
 
         EnergyNetwork network = new EnergyNetwork(api, UUID.fromString(id));
+        network.setDistributionMode(mode);
+        network.setUpdateInterval(interval);
         components.forEach((location, component) -> {
             try {
                 network.addComponent(component, location);
@@ -0,0 +1,19 @@
+package fr.traqueur.energylib.api.types;
+
+/**
+ * Represents the way a network hands out the produced energy to its consumers.
+ */
+public enum DistributionMode {
+
+    /**
+     * Each consumer pulls energy from the producers it reaches first, then from the storages.
+     */
+    GREEDY,
+
+    /**
+     * The network gathers the whole supply and the whole demand in a single pass,
+     * hands out the energy proportionally to the demands and settles the remainder with the storages.
+     */
+    POOLED,
+    ;
+}
@@ -6,7 +6,7 @@ import java.util.List;
 /**
  * Represents an energy type.
  */
-public interface EnergyType {
+public interface EnergyType extends NetworkDefaults {
 
     /**
      * The default energy type.
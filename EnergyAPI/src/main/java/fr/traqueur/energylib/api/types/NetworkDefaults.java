@@ -0,0 +1,25 @@
+package fr.traqueur.energylib.api.types;
+
+/**
+ * Represents the settings an energy type gives to its networks, unless a network overrides them.
+ * These default methods are kept out of {@link EnergyType}, so initializing the {@link EnergyTypes} enum
+ * does not initialize {@link EnergyType}, whose types are read from the enum.
+ */
+public interface NetworkDefaults {
+
+    /**
+     * Gets the way the networks of this energy type hand out energy, unless a network overrides it.
+     * @return the distribution mode of the energy type
+     */
+    default DistributionMode getDistributionMode() {
+        return DistributionMode.GREEDY;
+    }
+
+    /**
+     * Gets the number of ticks between two updates of the networks of this energy type, unless a network overrides it.
+     * @return the update interval of the energy type, in ticks
+     */
+    default int getUpdateInterval() {
+        return 1;
+    }
+}
@@ -0,0 +1,342 @@
+package fr.traqueur.energylib.api.utils;
+
+import java.util.Arrays;
+
+/**
+ * This class is an open-addressing hash map with primitive long keys.
+ * It uses linear probing and backward shift deletion, so no tombstones are left in the table.
+ * A null value marks an empty slot, so null values are not allowed.
+ * This class is not thread-safe.
+ *
+ * @param <V> the type of the values
+ */
+public class LongHashMap<V> {
+
+    /**
+     * The default capacity of the table.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum load factor of the table.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * The keys of the table.
+     */
+    private long[] keys;
+
+    /**
+     * The values of the table.
+     */
+    private Object[] values;
+
+    /**
+     * The number of entries in the table.
+     */
+    private int size;
+
+    /**
+     * The number of entries after which the table is resized.
+     */
+    private int threshold;
+
+    /**
+     * Create a new map with the default capacity.
+     */
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new map able to hold the given number of entries without being resized.
+     *
+     * @param expected the expected number of entries
+     */
+    public LongHashMap(int expected) {
+        this.allocate(tableSize(expected));
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get if the map is empty.
+     *
+     * @return true if the map is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key the key
+     * @return the value of the key, or null if the key is absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = this.find(key);
+        return slot < 0 ? null : (V) this.values[slot];
+    }
+
+    /**
+     * Get if the map contains a key.
+     *
+     * @param key the key
+     * @return true if the map contains the key, false otherwise
+     */
+    public boolean containsKey(long key) {
+        return this.find(key) >= 0;
+    }
+
+    /**
+     * Associate a value to a key.
+     *
+     * @param key   the key
+     * @param value the value, must not be null
+     * @return the previous value of the key, or null if the key was absent
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed.");
+        }
+        int mask = this.keys.length - 1;
+        int slot = mix(key) & mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                V previous = (V) this.values[slot];
+                this.values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size > this.threshold) {
+            this.rehash(this.keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @param key the key
+     * @return the value of the key, or null if the key was absent
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = this.find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) this.values[slot];
+        this.shiftKeys(slot);
+        this.size--;
+        return previous;
+    }
+
+    /**
+     * Get the value of the first occupied slot of the table.
+     *
+     * @return any value of the map, or null if the map is empty
+     */
+    @SuppressWarnings("unchecked")
+    public V firstValue() {
+        for (Object value : this.values) {
+            if (value != null) {
+                return (V) value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /**
+     * Make sure the map can hold the given number of entries without being resized.
+     *
+     * @param expected the expected number of entries
+     */
+    public void ensureCapacity(int expected) {
+        int capacity = tableSize(expected);
+        if (capacity > this.keys.length) {
+            this.rehash(capacity);
+        }
+    }
+
+    /**
+     * Call an action for each entry.
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        for (int slot = 0; slot < this.values.length; slot++) {
+            if (this.values[slot] != null) {
+                action.accept(this.keys[slot], (V) this.values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Copy the keys in a new array.
+     *
+     * @return the keys
+     */
+    public long[] keys() {
+        long[] result = new long[this.size];
+        int index = 0;
+        for (int slot = 0; slot < this.values.length; slot++) {
+            if (this.values[slot] != null) {
+                result[index++] = this.keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copy the values in a new array, in the same order as {@link #keys()}.
+     *
+     * @return the values
+     */
+    public Object[] values() {
+        Object[] result = new Object[this.size];
+        int index = 0;
+        for (Object value : this.values) {
+            if (value != null) {
+                result[index++] = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the slot of a key.
+     *
+     * @param key the key
+     * @return the slot of the key, or -1 if the key is absent
+     */
+    private int find(long key) {
+        int mask = this.keys.length - 1;
+        int slot = mix(key) & mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Shift the entries following a removed slot, so the probe sequences stay unbroken.
+     *
+     * @param slot the removed slot
+     */
+    private void shiftKeys(int slot) {
+        int mask = this.keys.length - 1;
+        int last = slot;
+        slot = (slot + 1) & mask;
+        while (this.values[slot] != null) {
+            int ideal = mix(this.keys[slot]) & mask;
+            boolean movable = last <= slot ? (last >= ideal || ideal > slot) : (last >= ideal && ideal > slot);
+            if (movable) {
+                this.keys[last] = this.keys[slot];
+                this.values[last] = this.values[slot];
+                last = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.values[last] = null;
+    }
+
+    /**
+     * Move all the entries in a table of a new capacity.
+     *
+     * @param capacity the new capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (this.values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Allocate an empty table.
+     *
+     * @param capacity the capacity, a power of two
+     */
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Get the size of a table able to hold the given number of entries.
+     *
+     * @param expected the expected number of entries
+     * @return the size of the table, a power of two
+     */
+    private static int tableSize(int expected) {
+        int needed = (int) Math.ceil(Math.max(expected, 1) / LOAD_FACTOR) + 1;
+        return Math.max(DEFAULT_CAPACITY, Integer.highestOneBit(needed - 1) << 1);
+    }
+
+    /**
+     * Spread the bits of a key, packed positions are poorly distributed in their low bits.
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) (hash ^ (hash >>> 16));
+    }
+
+    /**
+     * An action called for each entry of the map.
+     *
+     * @param <V> the type of the values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+
+        /**
+         * Call the action.
+         *
+         * @param key   the key
+         * @param value the value
+         */
+        void accept(long key, V value);
+    }
+}
@@ -0,0 +1,143 @@
+package fr.traqueur.energylib.api.utils;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+
+/**
+ * This class is used to pack block coordinates into a single long.
+ * The layout is the same as the one used by Minecraft: 26 bits for x, 26 bits for z and 12 bits for y.
+ * Chunk coordinates are packed too: 32 bits for x and 32 bits for z.
+ */
+public final class Positions {
+
+    /**
+     * The mask of the x and z coordinates.
+     */
+    private static final long HORIZONTAL_MASK = (1L << 26) - 1;
+
+    /**
+     * The mask of the y coordinate.
+     */
+    private static final long VERTICAL_MASK = (1L << 12) - 1;
+
+    /**
+     * This class is not meant to be instantiated.
+     */
+    private Positions() {}
+
+    /**
+     * Pack block coordinates into a long.
+     *
+     * @param x the x coordinate of the block
+     * @param y the y coordinate of the block
+     * @param z the z coordinate of the block
+     * @return the packed position
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & HORIZONTAL_MASK) << 38) | ((z & HORIZONTAL_MASK) << 12) | (y & VERTICAL_MASK);
+    }
+
+    /**
+     * Pack the block coordinates of a location into a long.
+     *
+     * @param location the location
+     * @return the packed position
+     */
+    public static long pack(Location location) {
+        return pack(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * Get the x coordinate of a packed position.
+     *
+     * @param position the packed position
+     * @return the x coordinate
+     */
+    public static int x(long position) {
+        return (int) (position >> 38);
+    }
+
+    /**
+     * Get the y coordinate of a packed position.
+     *
+     * @param position the packed position
+     * @return the y coordinate
+     */
+    public static int y(long position) {
+        return (int) (position << 52 >> 52);
+    }
+
+    /**
+     * Get the z coordinate of a packed position.
+     *
+     * @param position the packed position
+     * @return the z coordinate
+     */
+    public static int z(long position) {
+        return (int) (position << 26 >> 38);
+    }
+
+    /**
+     * Get the packed position next to another one.
+     *
+     * @param position the packed position
+     * @param dx       the offset on the x axis
+     * @param dy       the offset on the y axis
+     * @param dz       the offset on the z axis
+     * @return the packed position of the neighbour
+     */
+    public static long offset(long position, int dx, int dy, int dz) {
+        return pack(x(position) + dx, y(position) + dy, z(position) + dz);
+    }
+
+    /**
+     * Pack chunk coordinates into a long.
+     *
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkZ the z coordinate of the chunk
+     * @return the packed chunk key
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the packed chunk key of a chunk.
+     *
+     * @param chunk the chunk
+     * @return the packed chunk key
+     */
+    public static long chunkKey(Chunk chunk) {
+        return chunkKey(chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * Get the packed key of the chunk containing a packed block position.
+     *
+     * @param position the packed position
+     * @return the packed chunk key
+     */
+    public static long chunkKey(long position) {
+        return chunkKey(x(position) >> 4, z(position) >> 4);
+    }
+
+    /**
+     * Get the x coordinate of a packed chunk key.
+     *
+     * @param chunkKey the packed chunk key
+     * @return the x coordinate of the chunk
+     */
+    public static int chunkX(long chunkKey) {
+        return (int) (chunkKey >> 32);
+    }
+
+    /**
+     * Get the z coordinate of a packed chunk key.
+     *
+     * @param chunkKey the packed chunk key
+     * @return the z coordinate of the chunk
+     */
+    public static int chunkZ(long chunkKey) {
+        return (int) chunkKey;
+    }
+}
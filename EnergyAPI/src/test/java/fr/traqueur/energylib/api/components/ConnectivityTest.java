@@ -0,0 +1,157 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.utils.LongHashMap;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.block.BlockFace;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link Connectivity#detachedParts(LongHashMap, List)}, on nodes from which a block has just been removed.
+ */
+class ConnectivityTest {
+
+    @Test
+    void aLoopStaysConnected() {
+        LongHashMap<NetworkNode> nodes = new LongHashMap<>();
+        for (int x = 0; x < 3; x++) {
+            for (int z = 0; z < 3; z++) {
+                if (x != 1 || z != 1) {
+                    this.add(nodes, x, z);
+                }
+            }
+        }
+        assertTrue(this.remove(nodes, 1, 0).isEmpty());
+    }
+
+    @Test
+    void anEndOfALineStaysConnected() {
+        LongHashMap<NetworkNode> nodes = new LongHashMap<>();
+        for (int x = 0; x < 5; x++) {
+            this.add(nodes, x, 0);
+        }
+        assertTrue(this.remove(nodes, 0, 0).isEmpty());
+    }
+
+    @Test
+    void cuttingALineDetachesTheSmallerPart() {
+        LongHashMap<NetworkNode> nodes = new LongHashMap<>();
+        for (int x = 0; x < 10; x++) {
+            this.add(nodes, x, 0);
+        }
+        List<List<NetworkNode>> parts = this.remove(nodes, 2, 0);
+
+        assertEquals(1, parts.size());
+        assertEquals(Set.of(Positions.pack(0, 64, 0), Positions.pack(1, 64, 0)), this.positions(parts.get(0)));
+    }
+
+    @Test
+    void removingTheCenterOfAStarKeepsTheLongestArm() {
+        LongHashMap<NetworkNode> nodes = new LongHashMap<>();
+        this.add(nodes, 0, 0);
+        this.add(nodes, 1, 0);
+        this.add(nodes, 0, 1);
+        this.add(nodes, 0, 2);
+        for (int x = -1; x > -6; x--) {
+            this.add(nodes, x, 0);
+        }
+        List<List<NetworkNode>> parts = this.remove(nodes, 0, 0);
+
+        Set<Set<Long>> detached = new HashSet<>();
+        for (List<NetworkNode> part : parts) {
+            detached.add(this.positions(part));
+        }
+        assertEquals(Set.of(Set.of(Positions.pack(1, 64, 0)), Set.of(Positions.pack(0, 64, 1), Positions.pack(0, 64, 2))), detached);
+    }
+
+    @Test
+    void randomRemovalsMatchAFullSearch() {
+        Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            LongHashMap<NetworkNode> nodes = new LongHashMap<>();
+            List<NetworkNode> all = new ArrayList<>();
+            for (int x = 0; x < 7; x++) {
+                for (int z = 0; z < 7; z++) {
+                    if (random.nextInt(3) > 0) {
+                        all.add(this.add(nodes, x, z));
+                    }
+                }
+            }
+            if (all.isEmpty()) {
+                continue;
+            }
+            NetworkNode removed = all.get(random.nextInt(all.size()));
+            List<Set<Long>> expected = this.componentsAround(nodes, removed);
+            List<List<NetworkNode>> parts = this.remove(nodes, Positions.x(removed.position), Positions.z(removed.position));
+
+            assertEquals(Math.max(0, expected.size() - 1), parts.size());
+            for (List<NetworkNode> part : parts) {
+                assertTrue(expected.remove(this.positions(part)));
+                assertEquals(part.size(), this.positions(part).size());
+            }
+        }
+    }
+
+    private NetworkNode add(LongHashMap<NetworkNode> nodes, int x, int z) {
+        NetworkNode node = new NetworkNode(null, Positions.pack(x, 64, z), null);
+        nodes.put(node.position, node);
+        return node;
+    }
+
+    private List<List<NetworkNode>> remove(LongHashMap<NetworkNode> nodes, int x, int z) {
+        long position = Positions.pack(x, 64, z);
+        nodes.remove(position);
+        List<NetworkNode> starts = new ArrayList<>();
+        for (BlockFace face : EnergyNetwork.FACES) {
+            NetworkNode neighbor = nodes.get(Positions.offset(position, face.getModX(), face.getModY(), face.getModZ()));
+            if (neighbor != null) {
+                starts.add(neighbor);
+            }
+        }
+        return Connectivity.detachedParts(nodes, starts);
+    }
+
+    // The connected parts next to a node once it is removed, found by a plain search from each of its neighbors.
+    private List<Set<Long>> componentsAround(LongHashMap<NetworkNode> nodes, NetworkNode removed) {
+        List<Set<Long>> components = new ArrayList<>();
+        Set<Long> visited = new HashSet<>();
+        visited.add(removed.position);
+        for (BlockFace face : EnergyNetwork.FACES) {
+            long start = Positions.offset(removed.position, face.getModX(), face.getModY(), face.getModZ());
+            if (!nodes.containsKey(start) || visited.contains(start)) {
+                continue;
+            }
+            Set<Long> component = new HashSet<>();
+            ArrayDeque<Long> queue = new ArrayDeque<>(List.of(start));
+            visited.add(start);
+            while (!queue.isEmpty()) {
+                long current = queue.poll();
+                component.add(current);
+                for (BlockFace next : EnergyNetwork.FACES) {
+                    long neighbor = Positions.offset(current, next.getModX(), next.getModY(), next.getModZ());
+                    if (nodes.containsKey(neighbor) && visited.add(neighbor)) {
+                        queue.add(neighbor);
+                    }
+                }
+            }
+            components.add(component);
+        }
+        return components;
+    }
+
+    private Set<Long> positions(List<NetworkNode> part) {
+        Set<Long> positions = new HashSet<>();
+        for (NetworkNode node : part) {
+            positions.add(node.position);
+        }
+        return positions;
+    }
+}
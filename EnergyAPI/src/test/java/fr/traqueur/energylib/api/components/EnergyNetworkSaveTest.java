@@ -0,0 +1,326 @@
+package fr.traqueur.energylib.api.components;
+
+import com.google.gson.Gson;
+import com.tcoded.folialib.impl.PlatformScheduler;
+import fr.traqueur.energylib.api.EnergyAPI;
+import fr.traqueur.energylib.api.EnergyManager;
+import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
+import fr.traqueur.energylib.api.persistents.EnergyNetworkPersistentDataType;
+import fr.traqueur.energylib.api.types.DistributionMode;
+import fr.traqueur.energylib.api.types.EnergyTypes;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the saves of {@link EnergyNetwork} encoded off the thread owning their chunk.
+ * The chunk is a stub whose data is kept in a map, and every thread owns it.
+ */
+class EnergyNetworkSaveTest {
+
+    private final Map<NamespacedKey, Object> data = new HashMap<>();
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final List<Runnable> regionTasks = new ArrayList<>();
+
+    private boolean loaded = true;
+
+    private boolean owned = true;
+
+    private int chunksGot;
+
+    private final World world = stub(World.class, (method, args) -> switch (method.getName()) {
+        case "isChunkLoaded" -> this.loaded;
+        case "getChunkAt" -> {
+            this.chunksGot++;
+            yield this.chunk();
+        }
+        default -> null;
+    });
+
+    private final EnergyAPI api = stub(EnergyAPI.class, (method, args) -> switch (method.getName()) {
+        case "getManager" -> this.manager();
+        case "getScheduler" -> this.scheduler();
+        default -> null;
+    });
+
+    private final EnergyNetworkPersistentDataType type = new EnergyNetworkPersistentDataType(this.api, new Gson());
+
+    @Test
+    void aNetworkIsEncodedByTheExecutorThenWritten() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+
+        CompletableFuture<Void> saved = network.saveAsync(this.tasks::add);
+        assertFalse(saved.isDone());
+        assertNull(this.saved(network));
+        assertTrue(network.isDirty());
+
+        this.runTasks();
+        assertTrue(saved.isDone());
+        assertNotNull(this.saved(network));
+        assertEquals(network.getId(), EnergyNetworkPersistentDataType.readId(this.saved(network)));
+        assertFalse(network.isDirty());
+    }
+
+    @Test
+    void aNetworkEncodedAfterItsChunkUnloadedIsWrittenOnceItIsLoaded() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+
+        network.saveAsync(this.tasks::add);
+        this.loaded = false;
+        this.runTasks();
+        assertNull(this.saved(network));
+        assertTrue(network.isDirty());
+
+        this.loaded = true;
+        assertTrue(network.writeEncoded());
+        assertNotNull(this.saved(network));
+    }
+
+    @Test
+    void anUnchangedNetworkIsWrittenWithoutBeingEncodedAgain() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        network.saveAsync(this.tasks::add);
+        this.loaded = false;
+        this.runTasks();
+        this.loaded = true;
+
+        CompletableFuture<Void> saved = network.saveAsync((task) -> fail("The network is encoded again"));
+
+        assertTrue(saved.isDone());
+        assertNotNull(this.saved(network));
+        assertFalse(network.isDirty());
+    }
+
+    @Test
+    void aChangedNetworkIsEncodedAgain() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        network.saveAsync(this.tasks::add);
+        this.loaded = false;
+        this.runTasks();
+        this.loaded = true;
+
+        network.wake();
+        network.saveAsync(this.tasks::add);
+
+        assertEquals(1, this.tasks.size());
+        this.runTasks();
+        assertFalse(network.isDirty());
+    }
+
+    @Test
+    void aRejectedSaveFailsAndTheNetworkStaysDirty() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+
+        CompletableFuture<Void> saved = network.saveAsync((task) -> {
+            throw new RejectedExecutionException();
+        });
+
+        assertTrue(saved.isCompletedExceptionally());
+        assertTrue(network.isDirty());
+        assertNull(this.saved(network));
+    }
+
+    @Test
+    void aDeletedNetworkIsNotWrittenByASaveInFlight() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+
+        network.saveAsync(this.tasks::add);
+        assertTrue(network.delete());
+        this.runTasks();
+
+        assertNull(this.saved(network));
+    }
+
+    @Test
+    void eachNetworkOfAChunkIsSavedUnderItsOwnKey() throws SameEnergyTypeException {
+        EnergyNetwork first = this.network();
+        EnergyNetwork second = this.network();
+
+        first.save();
+        second.save();
+
+        assertEquals(2, this.data.size());
+        assertEquals(first.getId(), EnergyNetworkPersistentDataType.readId(this.saved(first)));
+        assertEquals(second.getId(), EnergyNetworkPersistentDataType.readId(this.saved(second)));
+    }
+
+    @Test
+    void savingOrDeletingANetworkLeavesTheOthersOfItsChunkUntouched() throws SameEnergyTypeException {
+        EnergyNetwork first = this.network();
+        EnergyNetwork second = this.network();
+        first.save();
+        second.save();
+        byte[] kept = this.saved(second);
+
+        first.wake();
+        first.save();
+        assertSame(kept, this.saved(second));
+
+        assertTrue(first.delete());
+        assertNull(this.saved(first));
+        assertSame(kept, this.saved(second));
+    }
+
+    @Test
+    void aNetworkIsDirtyAfterEachChangeUntilItIsSaved() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        assertTrue(network.isDirty());
+        network.save();
+        assertFalse(network.isDirty());
+
+        network.setDistributionMode(DistributionMode.POOLED);
+        assertTrue(network.isDirty());
+        network.save();
+
+        network.setUpdateInterval(5);
+        assertTrue(network.isDirty());
+        network.save();
+
+        network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Topology.Transporter(50)), new Location(this.world, 2, 64, 0));
+        assertTrue(network.isDirty());
+        network.save();
+
+        network.wake();
+        assertTrue(network.isDirty());
+        network.markSaved();
+        assertFalse(network.isDirty());
+    }
+
+    @Test
+    void aChangeMadeWhileTheNetworkIsEncodedKeepsItDirty() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+
+        network.saveAsync(this.tasks::add);
+        network.wake();
+        this.runTasks();
+
+        assertNotNull(this.saved(network));
+        assertTrue(network.isDirty());
+    }
+
+    @Test
+    void aSaveFromAnotherThreadIsWrittenOnTheThreadOwningTheChunk() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.owned = false;
+
+        network.save();
+        assertNull(this.saved(network));
+        assertEquals(1, this.regionTasks.size());
+
+        this.regionTasks.forEach(Runnable::run);
+        assertNotNull(this.saved(network));
+        assertFalse(network.isDirty());
+    }
+
+    @Test
+    void theChunkOfANetworkIsNeverLoadedToSaveIt() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.loaded = false;
+        this.chunksGot = 0;
+
+        network.save();
+        network.saveAsync(this.tasks::add);
+        this.runTasks();
+
+        assertEquals(0, this.chunksGot);
+        assertNull(this.saved(network));
+        assertTrue(network.isDirty());
+    }
+
+    private EnergyNetwork network() throws SameEnergyTypeException {
+        EnergyNetwork network = new EnergyNetwork(this.api, UUID.randomUUID(), this.world, Positions.chunkKey(0, 0));
+        network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Topology.Storage(100, 10)), new Location(this.world, 0, 64, 0));
+        network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Topology.Transporter(50)), new Location(this.world, 1, 64, 0));
+        return network;
+    }
+
+    private byte[] saved(EnergyNetwork network) {
+        return (byte[]) this.data.get(this.key(network.getId()));
+    }
+
+    private void runTasks() {
+        List<Runnable> tasks = new ArrayList<>(this.tasks);
+        this.tasks.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private NamespacedKey key(UUID id) {
+        return new NamespacedKey("energylib", "network-data/" + id);
+    }
+
+    private Chunk chunk() {
+        PersistentDataContainer container = stub(PersistentDataContainer.class, (method, args) -> switch (method.getName()) {
+            case "set" -> this.data.put((NamespacedKey) args[0], args[2]);
+            case "get" -> this.data.get((NamespacedKey) args[0]);
+            case "remove" -> this.data.remove((NamespacedKey) args[0]);
+            default -> null;
+        });
+        return stub(Chunk.class, (method, args) -> switch (method.getName()) {
+            case "getPersistentDataContainer" -> container;
+            case "getWorld" -> this.world;
+            default -> null;
+        });
+    }
+
+    private EnergyManager manager() {
+        return stub(EnergyManager.class, (method, args) -> switch (method.getName()) {
+            case "getNetworkDataType" -> this.type;
+            case "getNetworkDataKey" -> this.key((UUID) args[0]);
+            default -> null;
+        });
+    }
+
+    // a scheduler running the tasks right away if the current thread owns the regions, later on the region thread otherwise
+    @SuppressWarnings("unchecked")
+    private PlatformScheduler scheduler() {
+        return stub(PlatformScheduler.class, (method, args) -> switch (method.getName()) {
+            case "isOwnedByCurrentRegion" -> this.owned;
+            case "runAtLocation" -> {
+                Runnable task = () -> ((Consumer<Object>) args[1]).accept(null);
+                if (this.owned) {
+                    task.run();
+                } else {
+                    this.regionTasks.add(task);
+                }
+                yield CompletableFuture.completedFuture(null);
+            }
+            default -> null;
+        });
+    }
+
+    private static <T> T stub(Class<T> type, BiFunction<Method, Object[], Object> answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> type.getSimpleName();
+            default -> {
+                Object answer = answers.apply(method, args);
+                if (answer == null && method.getReturnType() == boolean.class) {
+                    yield false;
+                }
+                yield answer;
+            }
+        }));
+    }
+}
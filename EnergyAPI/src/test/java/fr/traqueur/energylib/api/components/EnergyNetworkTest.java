@@ -0,0 +1,263 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
+import fr.traqueur.energylib.api.mechanics.EnergyMechanic;
+import fr.traqueur.energylib.api.mechanics.EnergyProducer;
+import fr.traqueur.energylib.api.types.EnergyTypes;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link EnergyNetwork}, updated on the calling thread since all the mechanics are thread-safe.
+ */
+class EnergyNetworkTest {
+
+    private final World world = Topology.world();
+
+    @Test
+    void theEnergyOfTheStoragesIsCarriedThroughASplit() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Topology.Storage(100, 0));
+        this.add(network, 1, new Topology.Transporter());
+        this.add(network, 2, new Topology.Transporter());
+        this.add(network, 3, new Topology.Transporter());
+        this.add(network, 4, new Topology.Storage(100, 0));
+        network.addComponent(this.component(new Topology.Producer(100)), new Location(this.world, 1, 65, 0));
+        network.update();
+        assertEquals(100, network.getStoredEnergy(), 1e-9);
+
+        Location cut = new Location(this.world, 2, 64, 0);
+        network.removeComponent(cut);
+        List<EnergyNetwork> parts = network.splitAround(cut);
+
+        assertEquals(1, parts.size());
+        assertEquals(50, network.getStoredEnergy(), 1e-9);
+        assertEquals(50, parts.get(0).getStoredEnergy(), 1e-9);
+    }
+
+    @Test
+    void theEnergyOfTheStoragesIsCarriedThroughAMerge() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Topology.Storage(100, 0));
+        network.addComponent(this.component(new Topology.Producer(30)), new Location(this.world, 0, 65, 0));
+        EnergyNetwork other = this.network();
+        this.add(other, 2, new Topology.Storage(100, 0));
+        other.addComponent(this.component(new Topology.Producer(20)), new Location(this.world, 2, 65, 0));
+        network.update();
+        other.update();
+
+        this.add(network, 1, new Topology.Transporter());
+        network.mergeWith(other);
+
+        assertEquals(50, network.getStoredEnergy(), 1e-9);
+    }
+
+    @Test
+    void aMergeMovesTheComponentsAndKeepsTheChunkOfTheNetwork() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        Topology.Consumer consumer = new Topology.Consumer(30);
+        this.add(network, 0, consumer);
+        this.add(network, 1, new Topology.Transporter());
+        EnergyNetwork other = new EnergyNetwork(Topology.api(), UUID.randomUUID(), this.world, Positions.chunkKey(5, 5));
+        this.add(other, 2, new Topology.Producer(100));
+
+        network.mergeWith(other);
+        network.update();
+
+        assertEquals(Positions.chunkKey(0, 0), network.getChunkKey());
+        assertEquals(3, network.getComponents().size());
+        assertEquals(30, consumer.received, 1e-9);
+    }
+
+    @Test
+    void aMergeAddsTheStatisticsOfTheOtherNetwork() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Topology.Transporter());
+        EnergyNetwork other = this.network();
+        this.add(other, 1, new Topology.Producer(100));
+        List<Runnable> tasks = new ArrayList<>();
+        other.update(0, tasks::add);
+        other.update(1, tasks::add);
+        tasks.forEach(Runnable::run);
+
+        network.mergeWith(other);
+
+        assertEquals(1, network.getOverruns());
+        assertEquals(other.getMaxLatency(), network.getMaxLatency());
+    }
+
+    @Test
+    void aWokenNetworkReadsItsStoragesAgain() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        Topology.Storage storage = new Topology.Storage(100, 0);
+        this.add(network, 0, storage);
+        network.addComponent(this.component(new Topology.Producer(30)), new Location(this.world, 0, 65, 0));
+        network.update();
+        storage.storeEnergy(20);
+
+        network.wake();
+        network.update();
+
+        assertEquals(50, network.getStoredEnergy(), 1e-9);
+        network.flushStorages().join();
+        assertEquals(50, storage.getStoredEnergy(), 1e-9);
+    }
+
+    @Test
+    void onlyAnUpdateMovingEnergyMakesTheNetworkDirty() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Topology.Producer(100));
+        this.add(network, 1, new Topology.Transporter());
+        network.markSaved();
+        network.update();
+        assertFalse(network.isDirty());
+
+        this.add(network, 2, new Topology.Consumer(10));
+        network.markSaved();
+        network.update();
+        assertTrue(network.isDirty());
+    }
+
+    @Test
+    void anActiveNetworkProducesTheTicksElapsedSinceItsLastUpdate() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        Topology.Producer producer = new Topology.Producer(1000);
+        this.add(network, 0, producer);
+        this.add(network, 1, new Topology.Transporter());
+        this.add(network, 2, new Topology.Consumer(1));
+        network.update(0);
+
+        assertTrue(network.update(5));
+
+        assertFalse(network.isDormant());
+        assertEquals(5, producer.elapsedTicks);
+    }
+
+    @Test
+    void aDormantNetworkProducesASingleIntervalWhenProbed() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        Topology.Producer producer = new Topology.Producer(1000);
+        this.add(network, 0, producer);
+        this.add(network, 1, new Topology.Transporter());
+        network.update(0);
+        assertTrue(network.isDormant());
+
+        long probe = EnergyNetwork.DORMANT_PROBE_INTERVAL;
+        assertTrue(network.isDue(probe));
+        assertTrue(network.update(probe));
+
+        assertEquals(network.getUpdateInterval(), producer.elapsedTicks);
+    }
+
+    @Test
+    void anUpdateIsStartedOnTheCallingThreadAndRunByTheExecutor() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Topology.Producer(100));
+        List<Runnable> tasks = new ArrayList<>();
+
+        assertTrue(network.update(0, tasks::add));
+        assertTrue(network.isUpdating());
+        assertFalse(network.update(1, tasks::add));
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertFalse(network.isUpdating());
+    }
+
+    @Test
+    void aRejectedUpdateIsNotStarted() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Topology.Producer(100));
+
+        assertThrows(RejectedExecutionException.class, () -> network.update(0, (task) -> {
+            throw new RejectedExecutionException();
+        }));
+
+        assertFalse(network.isUpdating());
+        assertTrue(network.isDue(0));
+    }
+
+    @Test
+    void anUpdateTriedWhileTheLastOneRunsIsCountedAsAnOverrun() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Topology.Producer(100));
+        List<Runnable> tasks = new ArrayList<>();
+
+        network.update(0, tasks::add);
+        assertFalse(network.update(1, tasks::add));
+        assertFalse(network.update(2, tasks::add));
+        assertEquals(2, network.getOverruns());
+
+        tasks.get(0).run();
+        assertFalse(network.isUpdating());
+        assertTrue(network.getMaxLatency().compareTo(network.getLastLatency()) >= 0);
+        assertTrue(network.update(3, tasks::add));
+        assertEquals(2, network.getOverruns());
+    }
+
+    @Test
+    void anUpdateFailingToStartIsNotLeftInFlight() throws SameEnergyTypeException {
+        EnergyNetwork network = this.network();
+        this.add(network, 0, new Scheduled());
+
+        // the API has no scheduler, so scheduling the mechanic fails
+        assertThrows(NullPointerException.class, () -> network.update(0));
+
+        assertFalse(network.isUpdating());
+        assertEquals(0, network.getOverruns());
+    }
+
+    private EnergyNetwork network() {
+        return new EnergyNetwork(Topology.api(), UUID.randomUUID(), this.world, Positions.chunkKey(0, 0));
+    }
+
+    private void add(EnergyNetwork network, int x, EnergyMechanic mechanic) throws SameEnergyTypeException {
+        network.addComponent(this.component(mechanic), new Location(this.world, x, 64, 0));
+    }
+
+    private EnergyComponent<?> component(EnergyMechanic mechanic) {
+        return new EnergyComponent<>(EnergyTypes.RF, mechanic);
+    }
+
+    // a producer that is not thread-safe, so it is scheduled on the thread owning its chunk
+    private static final class Scheduled implements EnergyProducer {
+
+        @Override
+        public double getMaxRate() {
+            return 0;
+        }
+
+        @Override
+        public double getRate() {
+            return 0;
+        }
+
+        @Override
+        public boolean canProduce(Location location) {
+            return true;
+        }
+
+        @Override
+        public void produce(Location location) {
+        }
+
+        @Override
+        public double extractEnergy(double v) {
+            return 0;
+        }
+
+        @Override
+        public double getExcessEnergy() {
+            return 0;
+        }
+    }
+}
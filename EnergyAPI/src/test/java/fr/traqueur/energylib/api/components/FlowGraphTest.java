@@ -0,0 +1,113 @@
+package fr.traqueur.energylib.api.components;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link FlowGraph}, the flow limited by the throughput of the transporters,
+ * started from the flow of the previous update and repaired when the capacities drop.
+ */
+class FlowGraphTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Test
+    void theThroughputOfATransporterLimitsTheFlow() {
+        Topology topology = new Topology();
+        topology.add(0, 64, 0, new Topology.Producer());
+        topology.add(1, 64, 0, new Topology.Transporter(5));
+        topology.add(2, 64, 0, new Topology.Consumer());
+        NetworkRoutes routes = topology.routes();
+        FlowGraph flow = routes.flow;
+        assertNotNull(flow);
+
+        flow.setElapsedTicks(1);
+        flow.setSupply(0, 100);
+        flow.setDemand(0, 100);
+        assertEquals(5, flow.augment(), DELTA);
+        assertEquals(5, flow.getDelivered(0), DELTA);
+
+        flow.setElapsedTicks(3);
+        flow.repair();
+        flow.augment();
+        assertEquals(15, flow.getDelivered(0), DELTA);
+        assertEquals(15, flow.getSupplied(0), DELTA);
+    }
+
+    @Test
+    void anUnchangedUpdateKeepsThePreviousFlow() {
+        FlowGraph flow = this.sharedCable();
+        this.update(flow, 10, 4, 4);
+        assertEquals(5, flow.getDelivered(0) + flow.getDelivered(1), DELTA);
+
+        flow.repair();
+        assertEquals(0, flow.augment(), DELTA);
+        assertEquals(5, flow.getDelivered(0) + flow.getDelivered(1), DELTA);
+        assertEquals(5, flow.getSupplied(0), DELTA);
+    }
+
+    @Test
+    void repairCancelsTheFlowAboveALowerDemand() {
+        FlowGraph flow = this.sharedCable();
+        this.update(flow, 10, 4, 4);
+        double other = flow.getDelivered(1);
+
+        flow.setDemand(0, 0);
+        flow.repair();
+        assertEquals(0, flow.getDelivered(0), DELTA);
+        assertEquals(other, flow.getDelivered(1), DELTA, "the flow of the other consumer is kept");
+        assertEquals(flow.getDelivered(1), flow.getSupplied(0), DELTA);
+
+        flow.augment();
+        assertEquals(4, flow.getDelivered(1), DELTA);
+        assertEquals(4, flow.getSupplied(0), DELTA);
+    }
+
+    @Test
+    void repairCancelsTheFlowAboveALowerSupply() {
+        FlowGraph flow = this.sharedCable();
+        this.update(flow, 10, 4, 4);
+
+        flow.setSupply(0, 1);
+        flow.repair();
+        assertTrue(flow.getSupplied(0) <= 1 + DELTA);
+        assertEquals(flow.getSupplied(0), flow.getDelivered(0) + flow.getDelivered(1), DELTA);
+
+        flow.augment();
+        assertEquals(1, flow.getSupplied(0), DELTA);
+        assertEquals(1, flow.getDelivered(0) + flow.getDelivered(1), DELTA);
+    }
+
+    @Test
+    void repairCancelsTheFlowAboveALowerThroughput() {
+        FlowGraph flow = this.sharedCable();
+        this.update(flow, 10, 4, 4);
+
+        flow.setElapsedTicks(0);
+        flow.repair();
+        assertEquals(0, flow.getSupplied(0), DELTA);
+        assertEquals(0, flow.augment(), DELTA);
+        assertEquals(0, flow.getDelivered(0) + flow.getDelivered(1), DELTA);
+    }
+
+    // A producer feeding two consumers through a transporter carrying 5 per tick.
+    private FlowGraph sharedCable() {
+        Topology topology = new Topology();
+        topology.add(0, 64, 0, new Topology.Producer());
+        topology.add(1, 64, 0, new Topology.Transporter(5));
+        topology.add(2, 64, 0, new Topology.Transporter());
+        topology.add(3, 64, 0, new Topology.Consumer());
+        topology.add(2, 65, 0, new Topology.Consumer());
+        return topology.routes().flow;
+    }
+
+    private void update(FlowGraph flow, double supply, double firstDemand, double secondDemand) {
+        flow.setElapsedTicks(1);
+        flow.setSupply(0, supply);
+        flow.setDemand(0, firstDemand);
+        flow.setDemand(1, secondDemand);
+        flow.repair();
+        flow.augment();
+    }
+}
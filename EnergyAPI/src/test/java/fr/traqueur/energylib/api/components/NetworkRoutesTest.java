@@ -0,0 +1,86 @@
+package fr.traqueur.energylib.api.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link NetworkRoutes}, the producers and the storage groups cached for each consumer and producer.
+ */
+class NetworkRoutesTest {
+
+    @Test
+    void consumersReachTheProducersThroughTransportersOrDirectly() {
+        Topology topology = new Topology();
+        NetworkNode producer = topology.add(0, 64, 0, new Topology.Producer());
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, new Topology.Transporter());
+        NetworkNode throughCable = topology.add(3, 64, 0, new Topology.Consumer());
+        NetworkNode behindConsumer = topology.add(4, 64, 0, new Topology.Consumer());
+        NetworkNode adjacent = topology.add(0, 65, 0, new Topology.Consumer());
+
+        NetworkRoutes routes = topology.routes();
+        assertEquals(Set.of(producer), this.producersOf(routes, throughCable));
+        assertEquals(Set.of(producer), this.producersOf(routes, adjacent));
+        assertEquals(Set.of(), this.producersOf(routes, behindConsumer));
+    }
+
+    @Test
+    void storagesAreGroupedByConnectedTransporters() {
+        Topology topology = new Topology();
+        topology.add(0, 64, 0, new Topology.Transporter());
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(0, 65, 0, new Topology.Storage(100, 0));
+        topology.add(1, 65, 0, new Topology.Storage(20, 0));
+        NetworkNode consumer = topology.add(2, 64, 0, new Topology.Consumer());
+        topology.add(10, 64, 0, new Topology.Storage(7, 0));
+        NetworkNode isolated = topology.add(11, 64, 0, new Topology.Consumer());
+
+        NetworkRoutes routes = topology.routes();
+        for (int i = 0; i < routes.storages.length; i++) {
+            routes.battery.read(i);
+        }
+        assertTrue(routes.battery.acquire());
+
+        int[] groups = routes.consumerBatteries[this.indexOf(routes.consumers, consumer)];
+        assertEquals(1, groups.length);
+        assertEquals(120, routes.battery.getAvailable(groups[0]), 0);
+
+        int[] isolatedGroups = routes.consumerBatteries[this.indexOf(routes.consumers, isolated)];
+        assertEquals(1, isolatedGroups.length);
+        assertEquals(7, routes.battery.getAvailable(isolatedGroups[0]), 0);
+    }
+
+    @Test
+    void routesAreComputedAgainAfterATopologyChange() {
+        Topology topology = new Topology();
+        NetworkNode producer = topology.add(0, 64, 0, new Topology.Producer());
+        NetworkNode cable = topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, new Topology.Transporter());
+        NetworkNode consumer = topology.add(3, 64, 0, new Topology.Consumer());
+
+        NetworkRoutes before = topology.routes();
+        topology.remove(cable);
+        NetworkRoutes after = topology.routes();
+
+        assertEquals(Set.of(producer), this.producersOf(before, consumer));
+        assertEquals(Set.of(), this.producersOf(after, consumer));
+        assertEquals(1, after.producers.length);
+        assertEquals(0, after.producerBatteries[0].length);
+    }
+
+    private Set<NetworkNode> producersOf(NetworkRoutes routes, NetworkNode consumer) {
+        return Topology.nodes(routes.producers, routes.consumerProducers[this.indexOf(routes.consumers, consumer)]);
+    }
+
+    private int indexOf(NetworkNode[] nodes, NetworkNode node) {
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] == node) {
+                return i;
+            }
+        }
+        throw new AssertionError("node not found");
+    }
+}
@@ -0,0 +1,176 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.mechanics.EnergyMechanic;
+import fr.traqueur.energylib.api.mechanics.ThreadSafeMechanic;
+import fr.traqueur.energylib.api.types.DistributionMode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link NetworkTick}, only the energy handed out is extracted from the producers.
+ */
+class NetworkTickTest {
+
+    @Test
+    void theEnergyNoConsumerTakesStaysInTheProducer() {
+        Topology topology = new Topology();
+        Topology.Producer producer = new Topology.Producer(100);
+        Topology.Consumer consumer = new Topology.Consumer(30);
+        topology.add(0, 64, 0, producer);
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, consumer);
+
+        this.run(topology, DistributionMode.GREEDY);
+
+        assertEquals(30, consumer.received, 1e-9);
+        assertEquals(30, producer.extracted, 1e-9);
+        assertEquals(70, producer.getExcessEnergy(), 1e-9);
+    }
+
+    @Test
+    void theEnergyStoredIsExtractedFromTheProducer() {
+        Topology topology = new Topology();
+        Topology.Producer producer = new Topology.Producer(100);
+        Topology.Consumer consumer = new Topology.Consumer(30);
+        topology.add(0, 64, 0, producer);
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, consumer);
+        topology.add(1, 65, 0, new Topology.Storage(50, 0));
+
+        this.run(topology, DistributionMode.GREEDY);
+
+        assertEquals(30, consumer.received, 1e-9);
+        assertEquals(80, producer.extracted, 1e-9);
+    }
+
+    @Test
+    void pooledProducersGiveTheSameShareOfTheirSupply() {
+        Topology topology = new Topology();
+        Topology.Producer first = new Topology.Producer(60);
+        Topology.Producer second = new Topology.Producer(40);
+        Topology.Consumer consumer = new Topology.Consumer(50);
+        topology.add(0, 64, 0, first);
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, second);
+        topology.add(1, 65, 0, consumer);
+
+        this.run(topology, DistributionMode.POOLED);
+
+        assertEquals(50, consumer.received, 1e-9);
+        assertEquals(30, first.extracted, 1e-9);
+        assertEquals(20, second.extracted, 1e-9);
+    }
+
+    @Test
+    void aLimitedTransporterKeepsTheRestInTheProducer() {
+        Topology topology = new Topology();
+        Topology.Producer producer = new Topology.Producer(100);
+        Topology.Consumer consumer = new Topology.Consumer(50);
+        topology.add(0, 64, 0, producer);
+        topology.add(1, 64, 0, new Topology.Transporter(10));
+        topology.add(2, 64, 0, consumer);
+
+        this.run(topology, DistributionMode.GREEDY);
+
+        assertEquals(10, consumer.received, 1e-9);
+        assertEquals(10, producer.extracted, 1e-9);
+        assertEquals(90, producer.getExcessEnergy(), 1e-9);
+    }
+
+    @Test
+    void pooledConsumersShareTheSupplyInProportionToTheirDemand() {
+        Topology topology = new Topology();
+        Topology.Consumer small = new Topology.Consumer(50);
+        Topology.Consumer large = new Topology.Consumer(100);
+        topology.add(0, 64, 0, new Topology.Producer(60));
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, small);
+        topology.add(1, 65, 0, large);
+
+        this.run(topology, DistributionMode.POOLED);
+
+        assertEquals(20, small.received, 1e-9);
+        assertEquals(40, large.received, 1e-9);
+    }
+
+    @Test
+    void pooledDeficitIsDrawnFromTheStorages() {
+        Topology topology = new Topology();
+        Topology.Producer producer = new Topology.Producer(20);
+        Topology.Consumer consumer = new Topology.Consumer(50);
+        topology.add(0, 64, 0, producer);
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, consumer);
+        topology.add(1, 65, 0, new Topology.Storage(100, 100));
+
+        NetworkRoutes routes = topology.routes();
+        new NetworkTick(Topology.api(), routes, DistributionMode.POOLED, 1).run().join();
+
+        assertEquals(50, consumer.received, 1e-9);
+        assertEquals(20, producer.extracted, 1e-9);
+        assertEquals(70, routes.battery.getStored(0), 1e-9);
+    }
+
+    @Test
+    void pooledSurplusIsStoredUpToTheCapacityOfTheStorages() {
+        Topology topology = new Topology();
+        Topology.Producer producer = new Topology.Producer(100);
+        Topology.Consumer consumer = new Topology.Consumer(10);
+        topology.add(0, 64, 0, producer);
+        topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, consumer);
+        topology.add(1, 65, 0, new Topology.Storage(40, 0));
+
+        NetworkRoutes routes = topology.routes();
+        new NetworkTick(Topology.api(), routes, DistributionMode.POOLED, 1).run().join();
+
+        assertEquals(10, consumer.received, 1e-9);
+        assertEquals(40, routes.battery.getStored(0), 1e-9);
+        assertEquals(50, producer.extracted, 1e-9);
+        assertEquals(50, producer.getExcessEnergy(), 1e-9);
+    }
+
+    @Test
+    void aStorageBehindALimitedTransporterFeedsAConsumerThroughIt() {
+        Topology topology = new Topology();
+        Topology.Storage full = new Topology.Storage(100, 100);
+        Topology.Storage empty = new Topology.Storage(100, 0);
+        Topology.Consumer consumer = new Topology.Consumer(50);
+        topology.add(0, 64, 0, full);
+        topology.add(1, 64, 0, new Topology.Transporter(10));
+        topology.add(2, 64, 0, empty);
+        topology.add(3, 64, 0, new Topology.Transporter());
+        topology.add(4, 64, 0, consumer);
+
+        NetworkRoutes routes = topology.routes();
+        new NetworkTick(Topology.api(), routes, DistributionMode.GREEDY, 1).run().join();
+
+        assertEquals(10, consumer.received, 1e-9);
+        assertEquals(90, routes.battery.getStored(0), 1e-9);
+        assertEquals(0, routes.battery.getStored(1), 1e-9);
+    }
+
+    @Test
+    void aComponentWithoutRoleDoesNotStopTheUpdate() {
+        Topology topology = new Topology();
+        Topology.Producer producer = new Topology.Producer(100);
+        Topology.Consumer consumer = new Topology.Consumer(30);
+        topology.add(0, 64, 0, producer);
+        topology.add(1, 64, 0, new Topology.Transporter(20));
+        topology.add(2, 64, 0, consumer);
+        topology.add(1, 65, 0, new Inert());
+
+        this.run(topology, DistributionMode.GREEDY);
+
+        assertEquals(20, consumer.received, 1e-9);
+    }
+
+    private void run(Topology topology, DistributionMode mode) {
+        new NetworkTick(Topology.api(), topology.routes(), mode, 1).run().join();
+    }
+
+    // a mechanic neither producer, consumer, storage nor transporter
+    private static final class Inert implements EnergyMechanic, ThreadSafeMechanic {
+    }
+}
@@ -0,0 +1,228 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.EnergyAPI;
+import fr.traqueur.energylib.api.mechanics.EnergyConsumer;
+import fr.traqueur.energylib.api.mechanics.EnergyMechanic;
+import fr.traqueur.energylib.api.mechanics.EnergyProducer;
+import fr.traqueur.energylib.api.mechanics.EnergyStorage;
+import fr.traqueur.energylib.api.mechanics.EnergyTransporter;
+import fr.traqueur.energylib.api.mechanics.ThreadSafeMechanic;
+import fr.traqueur.energylib.api.types.EnergyTypes;
+import fr.traqueur.energylib.api.utils.LongHashMap;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The components of a network built block by block for the tests, without a world.
+ * The mechanics are thread-safe, so the updates of the network run on the calling thread.
+ */
+final class Topology {
+
+    final LongHashMap<NetworkNode> components = new LongHashMap<>();
+
+    final ComponentRoles roles = new ComponentRoles();
+
+    final TransporterClusters clusters = new TransporterClusters();
+
+    NetworkNode add(int x, int y, int z, EnergyMechanic mechanic) {
+        NetworkNode node = new NetworkNode(null, Positions.pack(x, y, z), new EnergyComponent<>(EnergyTypes.RF, mechanic));
+        this.components.put(node.position, node);
+        this.roles.add(node);
+        this.clusters.add(this.components, node);
+        return node;
+    }
+
+    void remove(NetworkNode node) {
+        this.components.remove(node.position);
+        this.roles.remove(node);
+        this.clusters.remove(this.components, node);
+    }
+
+    NetworkRoutes routes() {
+        return this.routes(List.of());
+    }
+
+    NetworkRoutes routes(List<VirtualBattery> retired) {
+        return new NetworkRoutes(this.components, this.roles, this.clusters, retired);
+    }
+
+    // an API without scheduler nor manager, with the debug messages disabled
+    static EnergyAPI api() {
+        return stub(EnergyAPI.class);
+    }
+
+    // a world without any chunk
+    static World world() {
+        return stub(World.class);
+    }
+
+    static Set<NetworkNode> nodes(NetworkNode[] nodes, int[] indexes) {
+        Set<NetworkNode> result = new HashSet<>();
+        for (int index : indexes) {
+            result.add(nodes[index]);
+        }
+        return result;
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> type.getSimpleName();
+            default -> method.getReturnType() == boolean.class ? false : null;
+        }));
+    }
+
+    static final class Producer implements EnergyProducer, ThreadSafeMechanic {
+
+        private double excess;
+
+        double extracted;
+
+        int elapsedTicks;
+
+        Producer() {
+            this(0);
+        }
+
+        Producer(double excess) {
+            this.excess = excess;
+        }
+
+        @Override
+        public double getMaxRate() {
+            return 0;
+        }
+
+        @Override
+        public double getRate() {
+            return 0;
+        }
+
+        @Override
+        public boolean canProduce(Location location) {
+            return true;
+        }
+
+        @Override
+        public void produce(Location location) {
+        }
+
+        @Override
+        public void produce(Location location, int elapsedTicks) {
+            this.elapsedTicks = elapsedTicks;
+        }
+
+        @Override
+        public double extractEnergy(double v) {
+            double energy = Math.min(v, this.excess);
+            this.excess -= energy;
+            this.extracted += energy;
+            return energy;
+        }
+
+        @Override
+        public double getExcessEnergy() {
+            return this.excess;
+        }
+    }
+
+    static final class Consumer implements EnergyConsumer, ThreadSafeMechanic {
+
+        private final double demand;
+
+        private boolean enable = true;
+
+        double received;
+
+        Consumer() {
+            this(0);
+        }
+
+        Consumer(double demand) {
+            this.demand = demand;
+        }
+
+        @Override
+        public boolean isEnable() {
+            return this.enable;
+        }
+
+        @Override
+        public void setEnable(boolean enable) {
+            this.enable = enable;
+        }
+
+        @Override
+        public double getEnergyDemand() {
+            return this.demand;
+        }
+
+        @Override
+        public void receiveEnergy(double energyToGive) {
+            this.received += energyToGive;
+        }
+
+        @Override
+        public void consumeEnergy() {
+        }
+    }
+
+    static final class Storage implements EnergyStorage, ThreadSafeMechanic {
+
+        private final double capacity;
+
+        private double stored;
+
+        Storage(double capacity, double stored) {
+            this.capacity = capacity;
+            this.stored = stored;
+        }
+
+        @Override
+        public double getMaximumCapacity() {
+            return this.capacity;
+        }
+
+        @Override
+        public double storeEnergy(double energyStored) {
+            this.stored += energyStored;
+            return energyStored;
+        }
+
+        @Override
+        public double getStoredEnergy() {
+            return this.stored;
+        }
+
+        @Override
+        public double consumeEnergy(double energyTaken) {
+            this.stored -= energyTaken;
+            return energyTaken;
+        }
+    }
+
+    static final class Transporter implements EnergyTransporter, ThreadSafeMechanic {
+
+        private final double throughput;
+
+        Transporter() {
+            this(Double.POSITIVE_INFINITY);
+        }
+
+        Transporter(double throughput) {
+            this.throughput = throughput;
+        }
+
+        @Override
+        public double getMaxThroughput() {
+            return this.throughput;
+        }
+    }
+}
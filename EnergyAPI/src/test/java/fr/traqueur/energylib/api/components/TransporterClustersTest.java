@@ -0,0 +1,136 @@
+package fr.traqueur.energylib.api.components;
+
+import fr.traqueur.energylib.api.utils.Positions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link TransporterClusters}, mostly of the clusters split and the attachments updated when a block is removed.
+ */
+class TransporterClustersTest {
+
+    @Test
+    void removingTheMiddleOfALineSplitsTheCluster() {
+        Topology topology = new Topology();
+        NetworkNode first = topology.add(0, 64, 0, new Topology.Transporter(5));
+        NetworkNode middle = topology.add(1, 64, 0, new Topology.Transporter());
+        NetworkNode last = topology.add(2, 64, 0, new Topology.Transporter(5));
+        NetworkNode consumer = topology.add(0, 65, 0, new Topology.Consumer());
+        NetworkNode producer = topology.add(3, 64, 0, new Topology.Producer());
+        assertEquals(1, topology.clusters.all().size());
+        assertEquals(2, topology.clusters.get(first.position).limited);
+
+        topology.remove(middle);
+
+        TransporterClusters.Cluster left = topology.clusters.get(first.position);
+        TransporterClusters.Cluster right = topology.clusters.get(last.position);
+        assertEquals(2, topology.clusters.all().size());
+        assertNotSame(left, right);
+        assertNull(topology.clusters.get(middle.position));
+        assertEquals(1, left.limited);
+        assertEquals(1, right.limited);
+        assertEquals(Set.of(consumer.position), this.attached(left).keySet());
+        assertEquals(Set.of(producer.position), this.attached(right).keySet());
+    }
+
+    @Test
+    void removingAComponentDetachesItFromTheClusters() {
+        Topology topology = new Topology();
+        NetworkNode cable = topology.add(0, 64, 0, new Topology.Transporter());
+        topology.add(1, 64, 0, new Topology.Transporter());
+        NetworkNode corner = topology.add(1, 64, 1, new Topology.Consumer());
+        topology.add(0, 64, 1, new Topology.Transporter());
+
+        TransporterClusters.Cluster cluster = topology.clusters.get(cable.position);
+        assertEquals(Map.of(corner.position, 2), this.attached(cluster));
+
+        topology.remove(corner);
+        assertTrue(cluster.attachments.isEmpty());
+    }
+
+    @Test
+    void removingTheLastMemberDiscardsTheClusterAndKeepsTheIndexes() {
+        Topology topology = new Topology();
+        NetworkNode alone = topology.add(0, 64, 0, new Topology.Transporter());
+        NetworkNode other = topology.add(10, 64, 0, new Topology.Transporter());
+        assertEquals(0, topology.clusters.get(alone.position).index);
+
+        topology.remove(alone);
+
+        assertEquals(1, topology.clusters.all().size());
+        TransporterClusters.Cluster cluster = topology.clusters.get(other.position);
+        assertEquals(0, cluster.index);
+        assertSame(cluster, topology.clusters.all().get(0));
+    }
+
+    @Test
+    void randomRemovalsMatchClustersBuiltFromScratch() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            Topology topology = new Topology();
+            List<NetworkNode> nodes = new ArrayList<>();
+            for (int x = 0; x < 6; x++) {
+                for (int z = 0; z < 6; z++) {
+                    int kind = random.nextInt(10);
+                    if (kind < 6) {
+                        nodes.add(topology.add(x, 64, z, new Topology.Transporter(random.nextBoolean() ? 5 : Double.POSITIVE_INFINITY)));
+                    } else if (kind < 8) {
+                        nodes.add(topology.add(x, 64, z, new Topology.Consumer()));
+                    }
+                }
+            }
+            while (!nodes.isEmpty()) {
+                topology.remove(nodes.remove(random.nextInt(nodes.size())));
+                this.assertSameClusters(this.rebuild(topology), topology);
+            }
+        }
+    }
+
+    private Topology rebuild(Topology topology) {
+        Topology rebuilt = new Topology();
+        topology.components.forEach((position, node) ->
+                rebuilt.add(Positions.x(position), Positions.y(position), Positions.z(position), node.component.getMechanic()));
+        return rebuilt;
+    }
+
+    private void assertSameClusters(Topology expected, Topology actual) {
+        assertEquals(this.describe(expected.clusters), this.describe(actual.clusters));
+        List<TransporterClusters.Cluster> all = actual.clusters.all();
+        for (int i = 0; i < all.size(); i++) {
+            TransporterClusters.Cluster cluster = all.get(i);
+            assertEquals(i, cluster.index);
+            for (long position : cluster.members.keys()) {
+                assertSame(cluster, actual.clusters.get(position));
+            }
+        }
+    }
+
+    // Each cluster as its members, with its attachments and its number of limited transporters.
+    private Map<Set<Long>, String> describe(TransporterClusters clusters) {
+        Map<Set<Long>, String> result = new HashMap<>();
+        for (TransporterClusters.Cluster cluster : clusters.all()) {
+            Set<Long> members = new HashSet<>();
+            for (long position : cluster.members.keys()) {
+                members.add(position);
+            }
+            result.put(members, new TreeMap<>(this.attached(cluster)) + " limited " + cluster.limited);
+        }
+        return result;
+    }
+
+    private Map<Long, Integer> attached(TransporterClusters.Cluster cluster) {
+        Map<Long, Integer> result = new HashMap<>();
+        cluster.attachments.forEach(result::put);
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package fr.traqueur.energylib.api.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link VirtualBattery}, the storages charged as groups and carried over from one battery to the next.
+ */
+class VirtualBatteryTest {
+
+    @Test
+    void theStoragesStillInTheNetworkKeepTheirEnergy() {
+        Topology topology = new Topology();
+        topology.add(0, 64, 0, new Topology.Storage(100, 0));
+        NetworkRoutes before = this.charged(topology, 40);
+        before.battery.retire();
+
+        NetworkRoutes after = topology.routes(List.of(before.battery));
+
+        assertFalse(after.battery.needsRead());
+        assertEquals(40, after.battery.getTotalStored(), 1e-9);
+    }
+
+    @Test
+    void aStorageReplacedAtTheSamePositionIsReadAgain() {
+        Topology topology = new Topology();
+        NetworkNode storage = topology.add(0, 64, 0, new Topology.Storage(100, 0));
+        NetworkRoutes before = this.charged(topology, 40);
+        before.battery.retire();
+        topology.remove(storage);
+        topology.add(0, 64, 0, new Topology.Storage(100, 5));
+
+        NetworkRoutes after = topology.routes(List.of(before.battery));
+
+        assertTrue(after.battery.needsRead());
+        this.read(after);
+        assertEquals(5, after.battery.getTotalStored(), 1e-9);
+    }
+
+    @Test
+    void retiringSpreadsTheEnergyByCapacity() {
+        Topology topology = new Topology();
+        Topology.Storage small = new Topology.Storage(100, 0);
+        Topology.Storage large = new Topology.Storage(300, 0);
+        topology.add(0, 64, 0, small);
+        NetworkNode cable = topology.add(1, 64, 0, new Topology.Transporter());
+        topology.add(2, 64, 0, large);
+        NetworkRoutes before = this.charged(topology, 200);
+        before.battery.retire();
+        topology.remove(cable);
+
+        NetworkRoutes after = topology.routes(List.of(before.battery));
+        for (int i = 0; i < after.storages.length; i++) {
+            after.battery.flush(i);
+        }
+
+        assertEquals(2, after.battery.size());
+        assertEquals(50, small.getStoredEnergy(), 1e-9);
+        assertEquals(150, large.getStoredEnergy(), 1e-9);
+    }
+
+    @Test
+    void aRetiredBatteryIsNoLongerUsedNorFlushed() {
+        Topology topology = new Topology();
+        Topology.Storage storage = new Topology.Storage(100, 0);
+        topology.add(0, 64, 0, storage);
+        NetworkRoutes routes = this.charged(topology, 40);
+
+        routes.battery.retire();
+        routes.battery.flush(0);
+
+        assertFalse(routes.battery.acquire());
+        assertEquals(0, storage.getStoredEnergy(), 1e-9);
+    }
+
+    @Test
+    void flushingWritesTheEnergyMovedToTheMechanics() {
+        Topology topology = new Topology();
+        Topology.Storage storage = new Topology.Storage(100, 10);
+        topology.add(0, 64, 0, storage);
+        NetworkRoutes routes = this.charged(topology, 30);
+
+        routes.battery.spread();
+        routes.battery.flush(0);
+        routes.battery.flush(0);
+
+        assertEquals(40, storage.getStoredEnergy(), 1e-9);
+    }
+
+    @Test
+    void aStaleStorageKeepsTheEnergyMovedOnTopOfItsMechanic() {
+        Topology topology = new Topology();
+        Topology.Storage storage = new Topology.Storage(100, 0);
+        topology.add(0, 64, 0, storage);
+        NetworkRoutes routes = this.charged(topology, 40);
+        storage.storeEnergy(10);
+
+        routes.battery.markStale();
+        assertTrue(routes.battery.needsRead());
+        this.read(routes);
+        assertTrue(routes.battery.acquire());
+
+        assertEquals(50, routes.battery.getTotalStored(), 1e-9);
+        routes.battery.spread();
+        routes.battery.flush(0);
+        assertEquals(50, storage.getStoredEnergy(), 1e-9);
+    }
+
+    @Test
+    void aStaleStorageIsClampedToItsCapacity() {
+        Topology topology = new Topology();
+        Topology.Storage storage = new Topology.Storage(100, 0);
+        topology.add(0, 64, 0, storage);
+        NetworkRoutes routes = this.charged(topology, 40);
+        storage.storeEnergy(90);
+
+        routes.battery.markStale();
+        this.read(routes);
+
+        assertEquals(100, routes.battery.getTotalStored(), 1e-9);
+    }
+
+    // routes whose storages are read, then charged with some energy in their first group
+    private NetworkRoutes charged(Topology topology, double energy) {
+        NetworkRoutes routes = topology.routes();
+        this.read(routes);
+        assertTrue(routes.battery.acquire());
+        routes.battery.add(0, energy);
+        return routes;
+    }
+
+    private void read(NetworkRoutes routes) {
+        for (int i = 0; i < routes.storages.length; i++) {
+            routes.battery.read(i);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package fr.traqueur.energylib.api.persistents;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import fr.traqueur.energylib.api.components.EnergyComponent;
+import fr.traqueur.energylib.api.components.EnergyNetwork;
+import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
+import fr.traqueur.energylib.api.mechanics.EnergyTransporter;
+import fr.traqueur.energylib.api.persistents.adapters.EnergyComponentAdapter;
+import fr.traqueur.energylib.api.persistents.adapters.EnergyNetworkAdapter;
+import fr.traqueur.energylib.api.persistents.adapters.EnergyTypeAdapter;
+import fr.traqueur.energylib.api.types.DistributionMode;
+import fr.traqueur.energylib.api.types.EnergyType;
+import fr.traqueur.energylib.api.types.EnergyTypes;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.logging.Logger;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the binary format of the networks, see {@link EnergyNetworkPersistentDataType}.
+ * The world of the networks is a stub, found through a stub server.
+ */
+class EnergyNetworkPersistentDataTypeTest {
+
+    private static final UUID WORLD_ID = UUID.fromString("1b9f2c6e-4d0a-4f51-9a7e-3c2d8e5f6a71");
+
+    private static final World WORLD = stub(World.class, (method, args) -> switch (method.getName()) {
+        case "getUID" -> WORLD_ID;
+        case "getName" -> "world";
+        default -> null;
+    });
+
+    static {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(stub(Server.class, (method, args) -> switch (method.getName()) {
+                case "getWorld" -> WORLD_ID.equals(args[0]) ? WORLD : null;
+                case "getLogger" -> Logger.getLogger("Server");
+                case "getName", "getVersion", "getBukkitVersion" -> "test";
+                default -> null;
+            }));
+        }
+    }
+
+    private final Gson gson = new Gson();
+
+    private final EnergyNetworkPersistentDataType type = new EnergyNetworkPersistentDataType(null, this.gson);
+
+    @Test
+    void aNetworkIsDecodedAsItWasEncoded() throws SameEnergyTypeException {
+        EnergyNetwork network = new EnergyNetwork(null, new EnergyComponent<>(EnergyTypes.RF, new Cable(0)), new Location(WORLD, -40, -64, 114));
+        for (int x = -39; x < 40; x++) {
+            network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Cable(x)), new Location(WORLD, x, -64 + (x & 7), 114));
+        }
+        // Far apart components, so the deltas between them are large and negative.
+        network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Cable(1)), new Location(WORLD, 33_554_431, 2047, -33_554_432));
+        network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Cable(2)), new Location(WORLD, -33_554_432, -2048, 33_554_431));
+        network.setDistributionMode(DistributionMode.POOLED);
+        network.setUpdateInterval(7);
+
+        byte[] data = this.type.encode(network);
+        EnergyNetwork decoded = this.type.decode(data);
+
+        assertEquals(EnergyNetworkPersistentDataType.VERSION, data[0]);
+        assertEquals(network.getId(), EnergyNetworkPersistentDataType.readId(data));
+        assertEquals(network.getId(), decoded.getId());
+        assertSame(WORLD, decoded.getWorld());
+        assertEquals(Positions.chunkKey(-3, 7), decoded.getChunkKey());
+        assertEquals(Optional.of(DistributionMode.POOLED), decoded.getDistributionModeOverride());
+        assertEquals(OptionalInt.of(7), decoded.getUpdateIntervalOverride());
+        assertEquals(this.components(network), this.components(decoded));
+    }
+
+    @Test
+    void theChunkOfTheNetworkIsKeptWithoutAnyComponentInIt() throws SameEnergyTypeException {
+        EnergyNetwork network = new EnergyNetwork(null, UUID.randomUUID(), WORLD, Positions.chunkKey(5, -2));
+        network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Cable(0)), new Location(WORLD, 1, 64, 1));
+        network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Cable(1)), new Location(WORLD, 2, 64, 1));
+
+        EnergyNetwork decoded = this.type.decode(this.type.encode(network));
+
+        assertEquals(Positions.chunkKey(5, -2), decoded.getChunkKey());
+        assertEquals(this.components(network), this.components(decoded));
+    }
+
+    @Test
+    void theBodyIsCompressed() throws IOException, SameEnergyTypeException {
+        EnergyNetwork network = this.line(200);
+
+        byte[] data = this.type.encode(network);
+
+        assertTrue(data.length - 17 < this.inflate(data).length);
+    }
+
+    @Test
+    void theUncompressedVersionIsStillDecoded() throws IOException, SameEnergyTypeException {
+        EnergyNetwork network = this.line(20);
+        byte[] data = this.type.encode(network);
+        byte[] body = this.inflate(data);
+        byte[] legacy = Arrays.copyOf(data, 17 + body.length);
+        legacy[0] = 1;
+        System.arraycopy(body, 0, legacy, 17, body.length);
+
+        EnergyNetwork decoded = this.type.decode(legacy);
+
+        assertEquals(network.getId(), EnergyNetworkPersistentDataType.readId(legacy));
+        assertEquals(network.getChunkKey(), decoded.getChunkKey());
+        assertTrue(decoded.getDistributionModeOverride().isEmpty());
+        assertTrue(decoded.getUpdateIntervalOverride().isEmpty());
+        assertEquals(this.components(network), this.components(decoded));
+    }
+
+    @Test
+    void unknownFormatsAreRejected() throws SameEnergyTypeException {
+        byte[] data = this.type.encode(this.line(3));
+        byte[] unknown = data.clone();
+        unknown[0] = EnergyNetworkPersistentDataType.VERSION + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> EnergyNetworkPersistentDataType.readId(unknown));
+        assertThrows(IllegalArgumentException.class, () -> this.type.decode(unknown));
+        assertThrows(IllegalArgumentException.class, () -> EnergyNetworkPersistentDataType.readId(Arrays.copyOf(data, 16)));
+        assertThrows(IllegalArgumentException.class, () -> this.type.decode(Arrays.copyOf(data, data.length / 2)));
+    }
+
+    @Test
+    void aLegacyNetworkIsMigratedWithItsIdInTheChunkItWasReadFrom() throws SameEnergyTypeException {
+        EnergyNetwork network = this.line(10);
+        network.setDistributionMode(DistributionMode.POOLED);
+        Gson legacyGson = legacyGson();
+        EnergyNetwork legacy = legacyGson.fromJson(legacyGson.toJson(network, EnergyNetwork.class), EnergyNetwork.class);
+
+        // the steps of the migration of the plugin, see EnergyManagerImpl
+        EnergyNetwork migrated = new EnergyNetwork(null, legacy.getId(), WORLD, Positions.chunkKey(4, 4));
+        migrated.mergeWith(legacy);
+        legacy.getDistributionModeOverride().ifPresent(migrated::setDistributionMode);
+        EnergyNetwork decoded = this.type.decode(this.type.encode(migrated));
+
+        assertEquals(network.getId(), decoded.getId());
+        assertEquals(Positions.chunkKey(4, 4), decoded.getChunkKey());
+        assertEquals(Optional.of(DistributionMode.POOLED), decoded.getDistributionModeOverride());
+        assertEquals(this.components(network), this.components(decoded));
+    }
+
+    private EnergyNetwork line(int length) throws SameEnergyTypeException {
+        EnergyNetwork network = new EnergyNetwork(null, new EnergyComponent<>(EnergyTypes.RF, new Cable(0)), new Location(WORLD, 0, 64, 0));
+        for (int x = 1; x < length; x++) {
+            network.addComponent(new EnergyComponent<>(EnergyTypes.RF, new Cable(x % 4)), new Location(WORLD, x, 64, 0));
+        }
+        return network;
+    }
+
+    private byte[] inflate(byte[] data) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data, 17, data.length - 17))) {
+            return in.readAllBytes();
+        }
+    }
+
+    // Each component as its energy type and its mechanic in JSON, by packed position.
+    private Map<Long, String> components(EnergyNetwork network) {
+        Map<Long, String> components = new TreeMap<>();
+        network.forEachComponent((position, component) ->
+                components.put(position, component.getEnergyType().getName() + this.gson.toJson(component.getMechanic())));
+        return components;
+    }
+
+    // The JSON format of the networks saved by the previous versions, built like the Gson of the plugin.
+    private static Gson legacyGson() {
+        GsonBuilder builder = new GsonBuilder().registerTypeAdapter(EnergyType.class, new EnergyTypeAdapter());
+        builder.registerTypeAdapter(EnergyComponent.class, new EnergyComponentAdapter(builder.create()));
+        builder.registerTypeAdapter(EnergyNetwork.class, new EnergyNetworkAdapter(null, builder.create()));
+        return builder.create();
+    }
+
+    private static <T> T stub(Class<T> type, BiFunction<Method, Object[], Object> answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> type.getSimpleName();
+            default -> {
+                Object answer = answers.apply(method, args);
+                if (answer == null && method.getReturnType() == boolean.class) {
+                    yield false;
+                }
+                yield answer;
+            }
+        }));
+    }
+
+    static final class Cable implements EnergyTransporter {
+
+        private int level;
+
+        Cable(int level) {
+            this.level = level;
+        }
+    }
+}
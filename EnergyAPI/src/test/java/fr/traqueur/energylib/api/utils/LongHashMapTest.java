@@ -0,0 +1,107 @@
+package fr.traqueur.energylib.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link LongHashMap}, mostly of the backward-shift deletion keeping the probe sequences unbroken.
+ */
+class LongHashMapTest {
+
+    @Test
+    void putReplacesAndReturnsThePreviousValue() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertNull(map.put(42L, "a"));
+        assertEquals("a", map.put(42L, "b"));
+        assertEquals("b", map.get(42L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void zeroAndNegativeKeysAreRegularKeys() {
+        LongHashMap<String> map = new LongHashMap<>();
+        map.put(0L, "zero");
+        map.put(-1L, "minus one");
+        map.put(Long.MIN_VALUE, "min");
+        assertEquals("zero", map.get(0L));
+        assertEquals("minus one", map.get(-1L));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertEquals("zero", map.remove(0L));
+        assertFalse(map.containsKey(0L));
+        assertTrue(map.containsKey(-1L));
+    }
+
+    @Test
+    void nullValuesAreRejected() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(1L, null));
+    }
+
+    @Test
+    void removingEveryKeyOfAFullTableKeepsTheOthersReachable() {
+        for (int first = 0; first < 12; first++) {
+            LongHashMap<Long> map = new LongHashMap<>(12);
+            for (long key = 0; key < 12; key++) {
+                map.put(key * 31, key);
+            }
+            for (int i = 0; i < 12; i++) {
+                long removed = ((first + i) % 12) * 31L;
+                assertEquals(Long.valueOf(removed / 31), map.remove(removed));
+                assertNull(map.get(removed));
+                for (int j = i + 1; j < 12; j++) {
+                    long key = ((first + j) % 12) * 31L;
+                    assertEquals(Long.valueOf(key / 31), map.get(key), "key " + key + " lost after removing " + removed);
+                }
+            }
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    void randomOperationsMatchAHashMap() {
+        Random random = new Random(7);
+        LongHashMap<Integer> map = new LongHashMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        long[] universe = new long[48];
+        for (int i = 0; i < universe.length; i++) {
+            universe[i] = Positions.pack(random.nextInt(64) - 32, random.nextInt(16), random.nextInt(64) - 32);
+        }
+        for (int step = 0; step < 20_000; step++) {
+            long key = universe[random.nextInt(universe.length)];
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, step), map.put(key, step));
+            }
+            assertEquals(expected.size(), map.size());
+            for (long candidate : universe) {
+                assertEquals(expected.get(candidate), map.get(candidate));
+            }
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+        assertEquals(expected.size(), map.values().length);
+    }
+
+    @Test
+    void ensureCapacityKeepsTheEntries() {
+        LongHashMap<Long> map = new LongHashMap<>();
+        for (long key = 0; key < 10; key++) {
+            map.put(key, key);
+        }
+        map.ensureCapacity(1000);
+        for (long key = 0; key < 10; key++) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.firstValue());
+    }
+}
@@ -0,0 +1,80 @@
+package fr.traqueur.energylib.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link Positions}, at the edges of the 26 bits of x and z and of the 12 bits of y.
+ */
+class PositionsTest {
+
+    private static final int MIN_HORIZONTAL = -(1 << 25);
+
+    private static final int MAX_HORIZONTAL = (1 << 25) - 1;
+
+    private static final int MIN_VERTICAL = -(1 << 11);
+
+    private static final int MAX_VERTICAL = (1 << 11) - 1;
+
+    @Test
+    void packedCoordinatesRoundTripAtTheEdges() {
+        int[] horizontal = {MIN_HORIZONTAL, MIN_HORIZONTAL + 1, -30_000_000, -1, 0, 1, 30_000_000, MAX_HORIZONTAL - 1, MAX_HORIZONTAL};
+        int[] vertical = {MIN_VERTICAL, -64, -1, 0, 1, 319, MAX_VERTICAL};
+        for (int x : horizontal) {
+            for (int z : horizontal) {
+                for (int y : vertical) {
+                    long position = Positions.pack(x, y, z);
+                    assertEquals(x, Positions.x(position), "x of " + x + " " + y + " " + z);
+                    assertEquals(y, Positions.y(position), "y of " + x + " " + y + " " + z);
+                    assertEquals(z, Positions.z(position), "z of " + x + " " + y + " " + z);
+                }
+            }
+        }
+    }
+
+    @Test
+    void negativeCoordinatesDoNotBleedIntoTheOthers() {
+        long position = Positions.pack(0, -1, 0);
+        assertEquals(0, Positions.x(position));
+        assertEquals(0, Positions.z(position));
+        position = Positions.pack(0, 0, -1);
+        assertEquals(0, Positions.x(position));
+        assertEquals(0, Positions.y(position));
+        assertNotEquals(Positions.pack(0, -1, 0), Positions.pack(0, 0, -1));
+    }
+
+    @Test
+    void outOfRangeCoordinatesWrapAround() {
+        assertEquals(MIN_HORIZONTAL, Positions.x(Positions.pack(MAX_HORIZONTAL + 1, 0, 0)));
+        assertEquals(MIN_VERTICAL, Positions.y(Positions.pack(0, MAX_VERTICAL + 1, 0)));
+    }
+
+    @Test
+    void offsetCrossesZero() {
+        long position = Positions.pack(0, 0, 0);
+        long neighbor = Positions.offset(position, -1, -1, -1);
+        assertEquals(Positions.pack(-1, -1, -1), neighbor);
+        assertEquals(position, Positions.offset(neighbor, 1, 1, 1));
+    }
+
+    @Test
+    void chunkKeysFloorNegativeCoordinates() {
+        assertEquals(Positions.chunkKey(-1, -1), Positions.chunkKey(Positions.pack(-1, 64, -16)));
+        assertEquals(Positions.chunkKey(-2, 0), Positions.chunkKey(Positions.pack(-17, 64, 15)));
+        assertEquals(Positions.chunkKey(MIN_HORIZONTAL >> 4, MAX_HORIZONTAL >> 4),
+                Positions.chunkKey(Positions.pack(MIN_HORIZONTAL, 0, MAX_HORIZONTAL)));
+    }
+
+    @Test
+    void chunkKeysRoundTrip() {
+        int[] coordinates = {Integer.MIN_VALUE, -1_875_000, -1, 0, 1, 1_875_000, Integer.MAX_VALUE};
+        for (int x : coordinates) {
+            for (int z : coordinates) {
+                long chunkKey = Positions.chunkKey(x, z);
+                assertEquals(x, Positions.chunkX(chunkKey));
+                assertEquals(z, Positions.chunkZ(chunkKey));
+            }
+        }
+    }
+}
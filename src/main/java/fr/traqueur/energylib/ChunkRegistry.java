@@ -0,0 +1,162 @@
+package fr.traqueur.energylib;
+
+import fr.traqueur.energylib.api.components.EnergyNetwork;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a registry of the networks by chunk.
+ * A network is registered in the chunk it is saved in, and is only updated while this chunk is loaded.
+ */
+public class ChunkRegistry {
+
+    /**
+     * The networks of each world, by packed chunk key.
+     */
+    private final Map<UUID, Map<Long, Set<EnergyNetwork>>> worlds;
+
+    /**
+     * The chunks of each world whose saved networks have already been read.
+     */
+    private final Map<UUID, Set<Long>> readChunks;
+
+    /**
+     * The networks whose chunk is loaded.
+     */
+    private final Set<EnergyNetwork> loadedNetworks;
+
+    /**
+     * The networks of each world deleted while their chunk was unloaded, by packed chunk key.
+     */
+    private final Map<UUID, Map<Long, Set<UUID>>> pendingDeletes;
+
+    /**
+     * Create a new chunk registry.
+     */
+    public ChunkRegistry() {
+        this.worlds = new ConcurrentHashMap<>();
+        this.readChunks = new ConcurrentHashMap<>();
+        this.loadedNetworks = ConcurrentHashMap.newKeySet();
+        this.pendingDeletes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Register a network in its chunk.
+     *
+     * @param network the network
+     */
+    public void register(EnergyNetwork network) {
+        World world = network.getWorld();
+        long chunkKey = network.getChunkKey();
+        this.worlds.computeIfAbsent(world.getUID(), uuid -> new ConcurrentHashMap<>())
+                .computeIfAbsent(chunkKey, key -> ConcurrentHashMap.newKeySet())
+                .add(network);
+        if (world.isChunkLoaded(Positions.chunkX(chunkKey), Positions.chunkZ(chunkKey))) {
+            this.loadedNetworks.add(network);
+        }
+    }
+
+    /**
+     * Unregister a network from its chunk.
+     *
+     * @param network the network
+     */
+    public void unregister(EnergyNetwork network) {
+        this.loadedNetworks.remove(network);
+        Map<Long, Set<EnergyNetwork>> chunks = this.worlds.get(network.getWorld().getUID());
+        if (chunks == null) {
+            return;
+        }
+        chunks.computeIfPresent(network.getChunkKey(), (key, networks) -> {
+            networks.remove(network);
+            return networks.isEmpty() ? null : networks;
+        });
+    }
+
+    /**
+     * Remember that a network was deleted while its chunk was unloaded,
+     * so it is removed from the chunk once the chunk is loaded again.
+     *
+     * @param network the network
+     */
+    public void deleteLater(EnergyNetwork network) {
+        this.pendingDeletes.computeIfAbsent(network.getWorld().getUID(), uuid -> new ConcurrentHashMap<>())
+                .computeIfAbsent(network.getChunkKey(), key -> ConcurrentHashMap.newKeySet())
+                .add(network.getId());
+    }
+
+    /**
+     * Take the networks deleted while a chunk was unloaded.
+     *
+     * @param chunk the chunk
+     * @return the unique identifiers of the networks to remove from the chunk
+     */
+    public Set<UUID> takePendingDeletes(Chunk chunk) {
+        Map<Long, Set<UUID>> chunks = this.pendingDeletes.get(chunk.getWorld().getUID());
+        if (chunks == null) {
+            return Collections.emptySet();
+        }
+        Set<UUID> deleted = chunks.remove(Positions.chunkKey(chunk));
+        return deleted == null ? Collections.emptySet() : deleted;
+    }
+
+    /**
+     * Mark the networks of a chunk as loaded.
+     *
+     * @param chunk the chunk
+     */
+    public void load(Chunk chunk) {
+        this.loadedNetworks.addAll(this.getNetworks(chunk));
+    }
+
+    /**
+     * Mark the networks of a chunk as unloaded.
+     *
+     * @param chunk the chunk
+     */
+    public void unload(Chunk chunk) {
+        this.getNetworks(chunk).forEach(this.loadedNetworks::remove);
+    }
+
+    /**
+     * Mark the saved networks of a chunk as read.
+     *
+     * @param chunk the chunk
+     * @return true if the saved networks of the chunk were not read yet, false otherwise
+     */
+    public boolean markRead(Chunk chunk) {
+        return this.readChunks.computeIfAbsent(chunk.getWorld().getUID(), uuid -> ConcurrentHashMap.newKeySet())
+                .add(Positions.chunkKey(chunk));
+    }
+
+    /**
+     * Get the networks registered in a chunk.
+     *
+     * @param chunk the chunk
+     * @return the networks of the chunk
+     */
+    public Collection<EnergyNetwork> getNetworks(Chunk chunk) {
+        Map<Long, Set<EnergyNetwork>> chunks = this.worlds.get(chunk.getWorld().getUID());
+        if (chunks == null) {
+            return Collections.emptySet();
+        }
+        return chunks.getOrDefault(Positions.chunkKey(chunk), Collections.emptySet());
+    }
+
+    /**
+     * Get the networks whose chunk is loaded.
+     *
+     * @return the loaded networks
+     */
+    public Collection<EnergyNetwork> getLoadedNetworks() {
+        return this.loadedNetworks;
+    }
+}
@@ -0,0 +1,145 @@
+package fr.traqueur.energylib;
+
+import fr.traqueur.energylib.api.components.EnergyComponent;
+import fr.traqueur.energylib.api.components.EnergyNetwork;
+import fr.traqueur.energylib.api.utils.Positions;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is an index of all the components placed in the worlds.
+ * It allows to know in constant time which network owns a block.
+ */
+public class ComponentIndex {
+
+    /**
+     * The components of each world, by packed block position.
+     */
+    private final Map<UUID, Map<Long, Entry>> worlds;
+
+    /**
+     * Create a new component index.
+     */
+    public ComponentIndex() {
+        this.worlds = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the entry of a block.
+     *
+     * @param location the location of the block
+     * @return the entry of the block
+     */
+    public Optional<Entry> get(Location location) {
+        World world = location.getWorld();
+        if (world == null) {
+            return Optional.empty();
+        }
+        return this.get(world.getUID(), Positions.pack(location));
+    }
+
+    /**
+     * Get the entry of a block.
+     *
+     * @param world    the unique identifier of the world
+     * @param position the packed position of the block
+     * @return the entry of the block
+     */
+    public Optional<Entry> get(UUID world, long position) {
+        Map<Long, Entry> entries = this.worlds.get(world);
+        if (entries == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(entries.get(position));
+    }
+
+    /**
+     * Index a component.
+     *
+     * @param location  the location of the component
+     * @param network   the network of the component
+     * @param component the component
+     */
+    public void put(Location location, EnergyNetwork network, EnergyComponent<?> component) {
+        World world = location.getWorld();
+        if (world == null) {
+            return;
+        }
+        this.put(world.getUID(), Positions.pack(location), network, component);
+    }
+
+    /**
+     * Index a component.
+     *
+     * @param world     the unique identifier of the world
+     * @param position  the packed position of the component
+     * @param network   the network of the component
+     * @param component the component
+     */
+    public void put(UUID world, long position, EnergyNetwork network, EnergyComponent<?> component) {
+        this.worlds.computeIfAbsent(world, uuid -> new ConcurrentHashMap<>())
+                .put(position, new Entry(network, component));
+    }
+
+    /**
+     * Remove a component from the index.
+     *
+     * @param location the location of the component
+     */
+    public void remove(Location location) {
+        World world = location.getWorld();
+        if (world == null) {
+            return;
+        }
+        Map<Long, Entry> entries = this.worlds.get(world.getUID());
+        if (entries != null) {
+            entries.remove(Positions.pack(location));
+        }
+    }
+
+    /**
+     * Index all the components of a network.
+     *
+     * @param network the network
+     */
+    public void index(EnergyNetwork network) {
+        World world = network.getWorld();
+        if (world == null) {
+            return;
+        }
+        UUID uuid = world.getUID();
+        network.forEachComponent((position, component) -> this.put(uuid, position, network, component));
+    }
+
+    /**
+     * Remove all the components of a network from the index.
+     * The blocks that are now owned by another network are kept.
+     *
+     * @param network the network
+     */
+    public void unindex(EnergyNetwork network) {
+        World world = network.getWorld();
+        if (world == null) {
+            return;
+        }
+        Map<Long, Entry> entries = this.worlds.get(world.getUID());
+        if (entries == null) {
+            return;
+        }
+        network.forEachComponent((position, component) ->
+                entries.computeIfPresent(position, (key, entry) -> entry.network() == network ? null : entry));
+    }
+
+    /**
+     * An entry of the index.
+     *
+     * @param network   the network that owns the block
+     * @param component the component placed on the block
+     */
+    public record Entry(EnergyNetwork network, EnergyComponent<?> component) {}
+}
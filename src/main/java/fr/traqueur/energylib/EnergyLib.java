@@ -17,7 +17,6 @@ import org.bukkit.plugin.ServicesManager;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
 
 /**
  * This class is the main class of the plugin.
@@ -71,8 +70,6 @@ public final class EnergyLib extends JavaPlugin implements EnergyAPI {
             });
 
             this.manager.startNetworkUpdater();
-
-            this.getScheduler().runTimerAsync(this.manager::saveNetworks, 1, 1, TimeUnit.HOURS);
         });
     }
 
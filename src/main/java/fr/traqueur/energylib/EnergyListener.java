@@ -13,6 +13,8 @@ import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
 import org.bukkit.inventory.ItemStack;
 
 /**
@@ -51,6 +53,26 @@ public class EnergyListener implements Listener {
         this.energyManager.loadNetworks(event.getChunk());
     }
 
+    /**
+     * Save and unload energy networks in a chunk
+     *
+     * @param event the event
+     */
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        this.energyManager.unloadNetworks(event.getChunk());
+    }
+
+    /**
+     * Save the energy networks of a world
+     *
+     * @param event the event
+     */
+    @EventHandler
+    public void onWorldSave(WorldSaveEvent event) {
+        this.energyManager.saveNetworks(event.getWorld());
+    }
+
     /**
      * Place an energy component in the world
      *
@@ -111,6 +133,7 @@ public class EnergyListener implements Listener {
             return;
         }
 
+        this.energyManager.flushStorage(location);
         switch (event.getAction()) {
             case RIGHT_CLICK_BLOCK -> {
                 interactableMechanic.onRightClick(event);
@@ -119,8 +142,10 @@ public class EnergyListener implements Listener {
                 interactableMechanic.onLeftClick(event);
             }
             default -> {
+                return;
             }
         }
+        this.energyManager.signalChange(location);
     }
 
 }
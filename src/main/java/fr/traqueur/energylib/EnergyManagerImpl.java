@@ -10,12 +10,14 @@ import fr.traqueur.energylib.api.components.EnergyNetwork;
 import fr.traqueur.energylib.api.exceptions.SameEnergyTypeException;
 import fr.traqueur.energylib.api.items.ItemsFactory;
 import fr.traqueur.energylib.api.mechanics.EnergyMechanic;
+import fr.traqueur.energylib.api.persistents.EnergyNetworkPersistentDataType;
 import fr.traqueur.energylib.api.persistents.EnergyTypePersistentDataType;
 import fr.traqueur.energylib.api.persistents.adapters.EnergyComponentAdapter;
 import fr.traqueur.energylib.api.persistents.adapters.EnergyNetworkAdapter;
 import fr.traqueur.energylib.api.persistents.adapters.EnergyTypeAdapter;
 import fr.traqueur.energylib.api.types.EnergyType;
 import fr.traqueur.energylib.api.types.MechanicType;
+import fr.traqueur.energylib.api.utils.Positions;
 import org.bukkit.*;
 import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
@@ -24,8 +26,10 @@ import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.persistence.PersistentDataType;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
@@ -39,11 +43,21 @@ public class EnergyManagerImpl implements EnergyManager {
      */
     private static final List<BlockFace> NEIBHORS = List.of(BlockFace.UP, BlockFace.DOWN, BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST);
 
+    /**
+     * The time the network updater may spend each tick by default, a fifth of a tick.
+     */
+    private static final Duration DEFAULT_UPDATE_BUDGET = Duration.ofMillis(10);
+
     /**
      * The EnergyLib instance.
      */
     private final EnergyAPI api;
 
+    /**
+     * The logger of the plugin.
+     */
+    private final Logger logger;
+
     /**
      * The Gson instance.
      */
@@ -65,20 +79,55 @@ public class EnergyManagerImpl implements EnergyManager {
     private final NamespacedKey mechanicKey;
 
     /**
-     * The key to store the network in the chunk.
+     * The key of the networks saved as JSON in the chunk, only read to migrate them.
      */
     private final NamespacedKey networkKey;
 
     /**
-     * The set of all the energy networks.
+     * The prefix of the keys of the networks saved in the chunk, followed by their unique identifier.
+     */
+    private final NamespacedKey networkDataKey;
+
+    /**
+     * The persistent data type of the networks saved in the chunk.
+     */
+    private final EnergyNetworkPersistentDataType networkDataType;
+
+    /**
+     * The energy networks by unique identifier.
+     */
+    private final Map<UUID, EnergyNetwork> networks;
+
+    /**
+     * The index of the components placed in the worlds.
+     */
+    private final ComponentIndex index;
+
+    /**
+     * The registry of the networks by chunk.
+     */
+    private final ChunkRegistry registry;
+
+    /**
+     * The saver encoding the networks off the region threads.
      */
-    private final Set<EnergyNetwork> networks;
+    private final NetworkSaver saver;
 
     /**
      * The task that updates the networks.
      */
     private WrappedTask updaterTask;
 
+    /**
+     * The runnable of the task that updates the networks.
+     */
+    private UpdaterNetworksTask updater;
+
+    /**
+     * The time the network updater may spend each tick.
+     */
+    private volatile Duration updateBudget;
+
     /**
      * Create a new EnergyManagerImpl instance.
      *
@@ -86,12 +135,19 @@ public class EnergyManagerImpl implements EnergyManager {
      */
     public EnergyManagerImpl(EnergyLib energyLib) {
         this.api = energyLib;
+        this.logger = energyLib.getLogger();
         this.gson = this.createGson();
-        this.networks = new HashSet<>();
+        this.updateBudget = DEFAULT_UPDATE_BUDGET;
+        this.networks = new ConcurrentHashMap<>();
+        this.index = new ComponentIndex();
+        this.registry = new ChunkRegistry();
+        this.saver = new NetworkSaver(this.logger);
         this.energyTypeKey = new NamespacedKey(energyLib, "energy-type");
         this.mechanicClassKey = new NamespacedKey(energyLib, "mechanic-class");
         this.mechanicKey = new NamespacedKey(energyLib, "mechanic");
         this.networkKey = new NamespacedKey(energyLib, "network");
+        this.networkDataKey = new NamespacedKey(energyLib, "network-data");
+        this.networkDataType = new EnergyNetworkPersistentDataType(this.api, this.gson);
     }
 
     /**
@@ -100,9 +156,11 @@ public class EnergyManagerImpl implements EnergyManager {
     @Override
     public void placeComponent(EnergyComponent<?> component, Location location) throws SameEnergyTypeException {
         List<EnergyNetwork> energyNetworks = new ArrayList<>();
+        UUID world = location.getWorld().getUID();
+        long position = Positions.pack(location);
         for (BlockFace neibhorFace : NEIBHORS) {
-            var neibhor = location.getBlock().getRelative(neibhorFace);
-            var networkNeighbor = this.networks.stream().filter(network -> network.contains(neibhor.getLocation())).findFirst();
+            long neibhor = Positions.offset(position, neibhorFace.getModX(), neibhorFace.getModY(), neibhorFace.getModZ());
+            var networkNeighbor = this.index.get(world, neibhor).map(ComponentIndex.Entry::network);
             if (networkNeighbor.isPresent()) {
                 if (!energyNetworks.contains(networkNeighbor.get()))
                     energyNetworks.add(networkNeighbor.get());
@@ -115,17 +173,23 @@ public class EnergyManagerImpl implements EnergyManager {
 
         if (energyNetworks.isEmpty()) {
             EnergyNetwork network = new EnergyNetwork(this.api, component, location);
-            this.networks.add(network);
+            this.addNetwork(network);
         } else if (energyNetworks.size() == 1) {
-            energyNetworks.getFirst().addComponent(component, location);
+            EnergyNetwork network = energyNetworks.getFirst();
+            network.addComponent(component, location);
+            this.index.put(location, network, component);
         } else {
-            EnergyNetwork firstNetwork = energyNetworks.getFirst();
-            firstNetwork.addComponent(component, location);
-            for (int i = 1; i < energyNetworks.size(); i++) {
-                EnergyNetwork network = energyNetworks.get(i);
-                firstNetwork.mergeWith(network);
+            EnergyNetwork largestNetwork = Collections.max(energyNetworks, Comparator.comparingInt(network -> network.getComponents().size()));
+            for (EnergyNetwork network : energyNetworks) {
+                if (network == largestNetwork) {
+                    continue;
+                }
+                largestNetwork.mergeWith(network);
+                network.forEachComponent((mergedPosition, mergedComponent) -> this.index.put(world, mergedPosition, largestNetwork, mergedComponent));
                 this.deleteNetwork(network);
             }
+            largestNetwork.addComponent(component, location);
+            this.index.put(location, largestNetwork, component);
         }
     }
 
@@ -134,12 +198,14 @@ public class EnergyManagerImpl implements EnergyManager {
      */
     @Override
     public void breakComponent(Player player, Location location) {
-        EnergyNetwork network = this.networks.stream().filter(n -> n.contains(location)).findFirst().orElse(null);
-        if (network == null) {
+        ComponentIndex.Entry entry = this.index.get(location).orElse(null);
+        if (entry == null) {
             return;
         }
 
-        EnergyComponent<?> component = network.getComponents().get(location);
+        EnergyNetwork network = entry.network();
+        EnergyComponent<?> component = entry.component();
+        network.flushStorage(location);
         EnergyType energyType = component.getEnergyType();
         MechanicType mechanicType = MechanicType.fromComponent(component);
         EnergyMechanic mechanic = component.getMechanic();
@@ -151,13 +217,14 @@ public class EnergyManagerImpl implements EnergyManager {
         }
 
         network.removeComponent(location);
+        this.index.remove(location);
 
         if (network.isEmpty()) {
             this.deleteNetwork(network);
             return;
         }
 
-        this.splitNetworkIfNecessary(network);
+        network.splitAround(location).forEach(this::addNetwork);
     }
 
     /**
@@ -205,7 +272,7 @@ public class EnergyManagerImpl implements EnergyManager {
      */
     @Override
     public boolean isBlockComponent(Location neighbor) {
-        return this.networks.stream().anyMatch(network -> network.contains(neighbor));
+        return this.index.get(neighbor).isPresent();
     }
 
     /**
@@ -257,8 +324,9 @@ public class EnergyManagerImpl implements EnergyManager {
      */
     @Override
     public void startNetworkUpdater() {
+        this.updater = new UpdaterNetworksTask(this.api, this);
         this.updaterTask = this.api.getScheduler()
-                .runTimerAsync(new UpdaterNetworksTask(this), 0L, 1L);
+                .runTimerAsync(this.updater, 0L, 1L);
     }
 
     /**
@@ -270,12 +338,41 @@ public class EnergyManagerImpl implements EnergyManager {
             throw new IllegalStateException("Updater task is not running!");
         }
         this.updaterTask.cancel();
+        this.updater.shutdown();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUpdateBudget(Duration budget) {
+        this.updateBudget = budget == null || budget.isNegative() ? Duration.ZERO : budget;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Duration getUpdateBudget() {
+        return this.updateBudget;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDeferredNetworks() {
+        return this.updater == null ? 0 : this.updater.getDeferred();
     }
 
     @Override
     public void deleteNetwork(EnergyNetwork network) {
-        network.delete();
-        this.networks.remove(network);
+        if (!network.delete()) {
+            this.registry.deleteLater(network);
+        }
+        this.networks.remove(network.getId());
+        this.registry.unregister(network);
+        this.index.unindex(network);
     }
 
     /**
@@ -283,7 +380,67 @@ public class EnergyManagerImpl implements EnergyManager {
      */
     @Override
     public void saveNetworks() {
-        this.networks.forEach(EnergyNetwork::save);
+        this.saver.drain();
+        int saved = 0;
+        int skipped = 0;
+        for (EnergyNetwork network : this.registry.getLoadedNetworks()) {
+            if (network.isDirty()) {
+                network.save();
+                saved++;
+            } else {
+                skipped++;
+            }
+        }
+        for (EnergyNetwork network : this.networks.values()) {
+            if (!network.isDirty() || network.isChunkLoaded()) {
+                continue;
+            }
+            int chunkX = Positions.chunkX(network.getChunkKey());
+            int chunkZ = Positions.chunkZ(network.getChunkKey());
+            if (this.api.getScheduler().isOwnedByCurrentRegion(network.getWorld(), chunkX, chunkZ) && network.writeEncoded()) {
+                saved++;
+            } else {
+                this.logger.warning("The network " + network.getId() + " could not be written in its unloaded chunk.");
+            }
+        }
+        if (this.api.isDebug()) {
+            System.out.println(saved + " réseaux sauvegardés, " + skipped + " réseaux inchangés ignorés.");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveNetworks(Chunk chunk) {
+        for (EnergyNetwork network : this.registry.getNetworks(chunk)) {
+            if (network.isDirty()) {
+                this.saver.save(network);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveNetworks(World world) {
+        for (EnergyNetwork network : this.registry.getLoadedNetworks()) {
+            if (!world.equals(network.getWorld()) || !network.isDirty()) {
+                continue;
+            }
+            int chunkX = Positions.chunkX(network.getChunkKey());
+            int chunkZ = Positions.chunkZ(network.getChunkKey());
+            if (this.api.getScheduler().isOwnedByCurrentRegion(world, chunkX, chunkZ)) {
+                this.saver.save(network);
+            } else {
+                this.api.getScheduler().runAtLocation(new Location(world, chunkX << 4, 0, chunkZ << 4), (t) -> {
+                    if (network.isDirty() && network.isChunkLoaded()) {
+                        this.saver.save(network);
+                    }
+                });
+            }
+        }
     }
 
     /**
@@ -292,28 +449,95 @@ public class EnergyManagerImpl implements EnergyManager {
     @Override
     public void loadNetworks(Chunk chunk) {
         PersistentDataContainer chunkData = chunk.getPersistentDataContainer();
-        if (chunkData.has(this.getNetworkKey(), PersistentDataType.LIST.listTypeFrom(PersistentDataType.STRING))) {
-            List<String> networkDatas = chunkData.getOrDefault(this.getNetworkKey(), PersistentDataType.LIST.listTypeFrom(PersistentDataType.STRING), new ArrayList<>());
-            for (String networkData : networkDatas) {
-                EnergyNetwork network = this.gson.fromJson(networkData, EnergyNetwork.class);
-                if (this.networks.stream().noneMatch(n -> n.getId().equals(network.getId()))) {
-                    this.networks.add(network);
+        for (UUID deleted : this.registry.takePendingDeletes(chunk)) {
+            chunkData.remove(this.getNetworkDataKey(deleted));
+        }
+        if (this.registry.markRead(chunk)) {
+            String prefix = this.networkDataKey.getKey() + "/";
+            for (NamespacedKey key : chunkData.getKeys()) {
+                if (!key.getNamespace().equals(this.networkDataKey.getNamespace()) || !key.getKey().startsWith(prefix)) {
+                    continue;
+                }
+                byte[] networkData = chunkData.get(key, PersistentDataType.BYTE_ARRAY);
+                if (networkData != null && !this.networks.containsKey(EnergyNetworkPersistentDataType.readId(networkData))) {
+                    EnergyNetwork network = this.networkDataType.decode(networkData);
+                    network.markSaved();
+                    this.addNetwork(network);
                 }
             }
+            this.migrateNetworks(chunk, chunkData);
+        }
+        this.registry.load(chunk);
+        for (EnergyNetwork network : this.registry.getNetworks(chunk)) {
+            if (network.isDirty()) {
+                network.writeEncoded();
+            }
+        }
+    }
+
+    /**
+     * Migrate the networks saved as JSON by the previous versions to the binary format, all at once.
+     * Each network is anchored in the chunk it was read from and written under its own key,
+     * then the JSON list is removed from the chunk.
+     *
+     * @param chunk     The chunk.
+     * @param chunkData The data of the chunk.
+     */
+    private void migrateNetworks(Chunk chunk, PersistentDataContainer chunkData) {
+        List<String> networks = chunkData.get(this.getNetworkKey(), PersistentDataType.LIST.listTypeFrom(PersistentDataType.STRING));
+        if (networks == null) {
+            return;
+        }
+        for (String networkData : networks) {
+            EnergyNetwork legacy = this.gson.fromJson(networkData, EnergyNetwork.class);
+            if (this.networks.containsKey(legacy.getId())) {
+                continue;
+            }
+            EnergyNetwork network = new EnergyNetwork(this.api, legacy.getId(), chunk.getWorld(), Positions.chunkKey(chunk));
+            network.mergeWith(legacy);
+            legacy.getDistributionModeOverride().ifPresent(network::setDistributionMode);
+            legacy.getUpdateIntervalOverride().ifPresent(network::setUpdateInterval);
+            chunkData.set(this.getNetworkDataKey(network.getId()), PersistentDataType.BYTE_ARRAY, this.networkDataType.encode(network));
+            network.markSaved();
+            this.addNetwork(network);
+        }
+        chunkData.remove(this.getNetworkKey());
+        if (this.api.isDebug()) {
+            System.out.println(networks.size() + " réseaux migrés vers le format binaire.");
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void unloadNetworks(Chunk chunk) {
+        this.saveNetworks(chunk);
+        this.registry.unload(chunk);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public Optional<EnergyComponent<?>> getComponentFromBlock(Location location) {
-        Optional<EnergyNetwork> optionalEnergyNetwork = this.networks.stream()
-                .filter(network -> network.contains(location))
-                .findFirst();
+        return this.index.get(location).map(ComponentIndex.Entry::component);
+    }
 
-        return optionalEnergyNetwork.map(energyNetwork -> energyNetwork.getComponents().get(location));
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signalChange(Location location) {
+        this.index.get(location).ifPresent(entry -> entry.network().wake());
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushStorage(Location location) {
+        this.index.get(location).ifPresent(entry -> entry.network().flushStorage(location));
     }
 
     /**
@@ -360,77 +584,44 @@ public class EnergyManagerImpl implements EnergyManager {
      * {@inheritDoc}
      */
     @Override
-    public Set<EnergyNetwork> getNetworks() {
-        return this.networks;
+    public NamespacedKey getNetworkDataKey(UUID id) {
+        return new NamespacedKey(this.networkDataKey.getNamespace(), this.networkDataKey.getKey() + "/" + id);
     }
 
     /**
-     * Check if th network must be split.
-     *
-     * @param network the network
+     * {@inheritDoc}
      */
-    private void splitNetworkIfNecessary(EnergyNetwork network) {
-        Set<Location> visited = new HashSet<>();
-        List<EnergyNetwork> newNetworks = new ArrayList<>();
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (Location component : network.getComponents().keySet()) {
-            var future = this.api.getScheduler().runAtLocation(component, (t) -> {
-                if (!visited.contains(component)) {
-                    Set<Map.Entry<Location, EnergyComponent<?>>> subNetworkComponents = discoverSubNetwork(component, visited);
-                    if (!subNetworkComponents.isEmpty()) {
-                        EnergyNetwork newNetwork = new EnergyNetwork(this.api, UUID.randomUUID());
-                        for (Map.Entry<Location, EnergyComponent<?>> subComponent : subNetworkComponents) {
-                            try {
-                                newNetwork.addComponent(subComponent.getValue(), subComponent.getKey());
-                            } catch (SameEnergyTypeException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                        newNetworks.add(newNetwork);
-                    }
-                }
-            });
-            futures.add(future);
-        }
+    @Override
+    public EnergyNetworkPersistentDataType getNetworkDataType() {
+        return this.networkDataType;
+    }
 
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenAccept((t) -> {
-            this.deleteNetwork(network);
-            this.networks.addAll(newNetworks);
-        });
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<EnergyNetwork> getNetworks() {
+        return new HashSet<>(this.networks.values());
     }
 
     /**
-     * Discover the sub network of a block.
+     * Get the networks whose chunk is loaded.
      *
-     * @param startBlock the start block
-     * @param visited    the set of visited blocks
-     * @return the set of components
-     */
-    private Set<Map.Entry<Location, EnergyComponent<?>>> discoverSubNetwork(Location startBlock, Set<Location> visited) {
-        Set<Map.Entry<Location, EnergyComponent<?>>> subNetwork = new HashSet<>();
-        Queue<Location> queue = new LinkedList<>();
-        queue.add(startBlock);
-
-        while (!queue.isEmpty()) {
-            Location current = queue.poll();
-            if (!visited.contains(current)) {
-                visited.add(current);
-                subNetwork.add(new AbstractMap.SimpleEntry<>(current, this.networks.stream()
-                        .filter(network -> network.contains(current))
-                        .findFirst()
-                        .map(network -> network.getComponents().get(current))
-                        .orElse(null)));
-
-                for (BlockFace face : NEIBHORS) {
-                    Location neighbor = current.getBlock().getRelative(face).getLocation();
-                    if (isBlockComponent(neighbor) && !visited.contains(neighbor)) {
-                        queue.add(neighbor);
-                    }
-                }
-            }
-        }
+     * @return the loaded networks
+     */
+    public Collection<EnergyNetwork> getLoadedNetworks() {
+        return this.registry.getLoadedNetworks();
+    }
 
-        return subNetwork;
+    /**
+     * Register a network in the manager, the index and the chunk registry.
+     *
+     * @param network the network
+     */
+    private void addNetwork(EnergyNetwork network) {
+        this.networks.put(network.getId(), network);
+        this.index.index(network);
+        this.registry.register(network);
     }
 
     /**
@@ -458,7 +649,6 @@ public class EnergyManagerImpl implements EnergyManager {
      */
     private Gson createGson() {
         GsonBuilder builder = new GsonBuilder()
-                .setPrettyPrinting()
                 .disableHtmlEscaping()
                 .registerTypeAdapter(EnergyType.class, new EnergyTypeAdapter());
 
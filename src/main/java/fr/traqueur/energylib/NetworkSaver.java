@@ -0,0 +1,73 @@
+package fr.traqueur.energylib;
+
+import fr.traqueur.energylib.api.components.EnergyNetwork;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class NetworkSaver {
+
+    private static final int QUEUE_CAPACITY = 256;
+
+    private static final long DRAIN_TIMEOUT_SECONDS = 10;
+
+    private final Logger logger;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Set<CompletableFuture<Void>> encoding;
+
+    public NetworkSaver(Logger logger) {
+        this.logger = logger;
+        this.encoding = ConcurrentHashMap.newKeySet();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = (runnable) -> {
+            Thread thread = new Thread(runnable, "EnergyLib-Saver-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), factory, this::reject);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void save(EnergyNetwork network) {
+        CompletableFuture<Void> future = network.saveAsync(this.executor);
+        this.encoding.add(future);
+        future.whenComplete((t, error) -> {
+            this.encoding.remove(future);
+            if (error != null) {
+                this.logger.log(Level.WARNING, "Unable to save the network " + network.getId() + ", it will be saved again on the next save.", error);
+            }
+        });
+    }
+
+    public void drain() {
+        CompletableFuture<?>[] futures = this.encoding.toArray(new CompletableFuture[0]);
+        try {
+            CompletableFuture.allOf(futures).get(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            this.logger.warning("Some networks are still being encoded after " + DRAIN_TIMEOUT_SECONDS + " seconds, they are saved on the current thread.");
+        } catch (ExecutionException ignored) {
+            // each failed save is already logged
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reject(Runnable task, ThreadPoolExecutor executor) {
+        this.logger.warning("The queue of the network saves is full, a network is encoded on the current thread.");
+        task.run();
+    }
+}
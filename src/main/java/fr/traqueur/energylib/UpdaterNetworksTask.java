@@ -1,21 +1,107 @@
 package fr.traqueur.energylib;
 
-import fr.traqueur.energylib.api.EnergyManager;
+import fr.traqueur.energylib.api.EnergyAPI;
+import fr.traqueur.energylib.api.components.EnergyNetwork;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 public class UpdaterNetworksTask implements Runnable {
 
-    private final EnergyManager manager;
+    private final EnergyAPI api;
+
+    private final EnergyManagerImpl manager;
+
+    private final ForkJoinPool pool;
+
+    private final ArrayDeque<EnergyNetwork> queue;
+
+    private final Set<EnergyNetwork> queued;
 
-    public UpdaterNetworksTask(EnergyManager manager) {
+    private long tick;
+
+    private volatile int deferred;
+
+    public UpdaterNetworksTask(EnergyAPI api, EnergyManagerImpl manager) {
+        this.api = api;
         this.manager = manager;
+        this.pool = new ForkJoinPool();
+        this.queue = new ArrayDeque<>();
+        this.queued = Collections.newSetFromMap(new IdentityHashMap<>());
     }
 
     @Override
     public void run() {
-        manager.getNetworks().forEach(energyNetwork -> {
-            if (energyNetwork.getChunk().isLoaded()) {
-                energyNetwork.update();
+        long tick = this.tick++;
+        Collection<EnergyNetwork> loaded = manager.getLoadedNetworks();
+        for (EnergyNetwork network : loaded) {
+            if (this.queued.add(network)) {
+                this.queue.addLast(network);
+            }
+        }
+
+        long budget = manager.getUpdateBudget().toNanos();
+        long spent = 0;
+        int updated = 0;
+        int remaining = this.queue.size();
+        while (remaining > 0) {
+            EnergyNetwork network = this.queue.peekFirst();
+            if (!loaded.contains(network)) {
+                this.queue.pollFirst();
+                this.queued.remove(network);
+                remaining--;
+                continue;
             }
-        });
+            if (network.isDue(tick)) {
+                long cost = network.getLastCost().toNanos();
+                if (budget > 0 && updated > 0 && spent + cost > budget) {
+                    break;
+                }
+                long start = System.nanoTime();
+                if (this.start(network, tick)) {
+                    updated++;
+                    spent += Math.max(cost, System.nanoTime() - start);
+                }
+            }
+            this.queue.addLast(this.queue.pollFirst());
+            remaining--;
+        }
+
+        int deferred = 0;
+        Iterator<EnergyNetwork> left = this.queue.iterator();
+        for (int i = 0; i < remaining; i++) {
+            if (left.next().isDue(tick)) {
+                deferred++;
+            }
+        }
+        this.deferred = deferred;
+        if (this.deferred > 0 && api.isDebug()) {
+            System.out.println("Le budget de mise à jour est dépassé, " + this.deferred + " réseaux sont reportés.");
+        }
+    }
+
+    private boolean start(EnergyNetwork network, long tick) {
+        if (!network.isThreadSafe()) {
+            return network.update(tick);
+        }
+        try {
+            return network.update(tick, this.pool);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public int getDeferred() {
+        return this.deferred;
+    }
+
+    public void shutdown() {
+        this.pool.shutdown();
     }
 }
@@ -5,6 +5,7 @@ import fr.traqueur.commands.api.Command;
 import fr.traqueur.energylib.EnergyLib;
 import fr.traqueur.energylib.api.EnergyManager;
 import fr.traqueur.energylib.api.components.EnergyNetwork;
+import fr.traqueur.energylib.api.utils.Positions;
 import org.bukkit.command.CommandSender;
 
 public class DeleteCommand extends Command<EnergyLib> {
@@ -24,6 +25,6 @@ public class DeleteCommand extends Command<EnergyLib> {
     public void execute(CommandSender commandSender, Arguments arguments) {
         EnergyNetwork network = arguments.get("network");
         manager.deleteNetwork(network);
-        commandSender.sendMessage("§aThe network §e" + network.getId() + " §ain chunk §e" + network.getChunk().getX() + " " + network.getChunk().getZ() + " §ahas been deleted.");
+        commandSender.sendMessage("§aThe network §e" + network.getId() + " §ain chunk §e" + Positions.chunkX(network.getChunkKey()) + " " + Positions.chunkZ(network.getChunkKey()) + " §ahas been deleted.");
     }
 }
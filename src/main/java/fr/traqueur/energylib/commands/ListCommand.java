@@ -4,6 +4,7 @@ import fr.traqueur.commands.api.Arguments;
 import fr.traqueur.commands.api.Command;
 import fr.traqueur.energylib.EnergyLib;
 import fr.traqueur.energylib.api.EnergyManager;
+import fr.traqueur.energylib.api.utils.Positions;
 import org.bukkit.command.CommandSender;
 
 public class ListCommand extends Command<EnergyLib> {
@@ -24,7 +25,7 @@ public class ListCommand extends Command<EnergyLib> {
         StringBuilder builder = new StringBuilder();
         builder.append("§7Networks:\n");
         manager.getNetworks().forEach(network -> {
-            builder.append("§e").append(network.getId()).append("§7: ").append("Chunk: §e").append(network.getChunk().getX()).append(" ").append(network.getChunk().getZ()).append("§7, §e").append(network.getEnergyType()).append("§7 energy.\n");
+            builder.append("§e").append(network.getId()).append("§7: ").append("Chunk: §e").append(Positions.chunkX(network.getChunkKey())).append(" ").append(Positions.chunkZ(network.getChunkKey())).append("§7, §e").append(network.getEnergyType()).append("§7 energy.\n");
         });
         commandSender.sendMessage(builder.toString());
     }
@@ -5,6 +5,7 @@ import fr.traqueur.commands.api.Command;
 import fr.traqueur.energylib.EnergyLib;
 import fr.traqueur.energylib.api.EnergyManager;
 import fr.traqueur.energylib.api.components.EnergyNetwork;
+import fr.traqueur.energylib.api.utils.Positions;
 import org.bukkit.command.CommandSender;
 
 public class ShowCommand extends Command<EnergyLib> {
@@ -24,10 +25,14 @@ public class ShowCommand extends Command<EnergyLib> {
     public void execute(CommandSender commandSender, Arguments arguments) {
         EnergyNetwork network = arguments.get("network");
         String builder = "§7Network §e" + network.getId() + "§7:\n" +
-                "§7- §eChunk: §7" + network.getChunk().getX() + " " + network.getChunk().getZ() + "\n" +
+                "§7- §eChunk: §7" + Positions.chunkX(network.getChunkKey()) + " " + Positions.chunkZ(network.getChunkKey()) + "\n" +
                 "§7- §eEnergy: §7" + network.getEnergyType() + "\n" +
                 "§7- §eComponents: §7" + network.getComponents().size() + "\n" +
-                "§7- §eLoaded: §7" + network.getChunk().isLoaded() + "\n";
+                "§7- §eLoaded: §7" + network.getWorld().isChunkLoaded(Positions.chunkX(network.getChunkKey()), Positions.chunkZ(network.getChunkKey())) + "\n" +
+                "§7- §eStored: §7" + network.getStoredEnergy() + "/" + network.getStorageCapacity() + "\n" +
+                "§7- §eDormant: §7" + network.isDormant() + "\n" +
+                "§7- §eLatency: §7" + network.getLastLatency().toMillis() + "ms (max " + network.getMaxLatency().toMillis() + "ms)\n" +
+                "§7- §eOverruns: §7" + network.getOverruns() + "\n";
         commandSender.sendMessage(builder);
     }
 }
@@ -6,6 +6,7 @@ public class BlockConsumer implements EnergyConsumer {
 
     private boolean enable = false;
     private double energy = 0;
+    private int elapsedTicks = 1;
 
     @Override
     public boolean isEnable() {
@@ -22,10 +23,17 @@ public class BlockConsumer implements EnergyConsumer {
         return 1000;
     }
 
+    @Override
+    public double getEnergyDemand(int elapsedTicks) {
+        this.elapsedTicks = elapsedTicks;
+        return this.getEnergyDemand() * elapsedTicks;
+    }
+
     @Override
     public void receiveEnergy(double energyToGive) {
         this.energy += energyToGive;
-        if (this.energy >= this.getEnergyDemand()) {
+        double demand = this.getEnergyDemand();
+        for (int i = 0; i < this.elapsedTicks && demand > 0 && this.energy >= demand; i++) {
             this.consumeEnergy();
         }
     }
@@ -43,6 +43,15 @@ public class BlockProducer implements EnergyProducer, InteractableMechanic {
         }
     }
 
+    @Override
+    public void produce(Location location, int elapsedTicks) {
+        if(this.canProduce(location)) {
+            System.out.println("Producing " + this.getRate() * elapsedTicks + " energy at " + location);
+            age += elapsedTicks;
+            producedEnergy = this.getRate() * elapsedTicks;
+        }
+    }
+
     @Override
     public double extractEnergy(double v) {
         double energy = Math.min(v, producedEnergy);
@@ -52,9 +61,7 @@ public class BlockProducer implements EnergyProducer, InteractableMechanic {
 
     @Override
     public double getExcessEnergy() {
-        double excess = producedEnergy;
-        producedEnergy = 0;
-        return excess;
+        return producedEnergy;
     }
 
     @Override